@@ -0,0 +1,107 @@
+package ru.krsmon.bridge.external.zabbix.service.impl;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import ru.krsmon.bridge.external.zabbix.model.ZabbixRequest;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.stream.Collectors.toMap;
+import static okhttp3.MediaType.get;
+import static okhttp3.RequestBody.create;
+import static ru.krsmon.bridge.external.zabbix.model.ZabbixConstrains.*;
+
+/**
+ * Decoding of zabbix host.get response: streaming into typed records against String->Map with casts,
+ * OkHttp answers from interceptor, so only request, response and decoding are measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ZabbixDecodingBenchmark {
+    private static final String URL = "http://zabbix.local/api_jsonrpc.php";
+
+    @Param({"100", "1000", "10000"})
+    private int hosts;
+
+    private ObjectMapper mapper;
+    private OkHttpClient client;
+    private ZabbixServiceImpl service;
+    private ZabbixRequest hostsRequest;
+
+    @Setup
+    public void setup() {
+        ((Logger) LoggerFactory.getLogger(ZabbixServiceImpl.class)).setLevel(Level.WARN);
+        final StringJoiner result = new StringJoiner(",", "[", "]");
+        for (int i = 0; i < hosts; i++) {
+            result.add("""
+                    {"hostid":"%s","name":"Router %s","host":"router-%s"}""".formatted(10084 + i, i, i));
+        }
+        final byte[] body = """
+                {"jsonrpc":"2.0","result":%s,"id":1}""".formatted(result).getBytes();
+
+        mapper = Jackson2ObjectMapperBuilder.json().build();
+        client = new OkHttpClient.Builder()
+                .addInterceptor(chain -> new Response.Builder()
+                        .request(chain.request())
+                        .protocol(Protocol.HTTP_1_1)
+                        .code(200)
+                        .message("OK")
+                        .body(ResponseBody.create(body, get("application/json")))
+                        .build())
+                .build();
+        service = new ZabbixServiceImpl(client, mapper);
+        service.zabbixUrl = URL;
+        service.apiToken = "token";
+        service.batchSize = 1000;
+        service.init();
+        hostsRequest = ZabbixRequest.builder()
+                .method(HOST_GET)
+                .auth("token")
+                .params(Map.of(OUTPUT, List.of(HOSTID, NAME)))
+                .build();
+    }
+
+    /**
+     * One host.get by name, interceptor answers with all hosts
+     */
+    @Benchmark
+    public Map<String, Integer> stream() {
+        return service.getHostIds(List.of("Router 0"));
+    }
+
+    /**
+     * Decoding before typed records: body into String, String into Map, result is cast
+     */
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public Map<String, Integer> stringToMap() throws Exception {
+        final Request request = new Request.Builder()
+                .url(URL)
+                .post(create(mapper.writeValueAsString(hostsRequest), get("application/json")))
+                .build();
+        try (Response response = client.newCall(request).execute()) {
+            final Map<String, Object> json = mapper.readValue(response.body().string(), new TypeReference<>() {});
+            final List<Map<String, String>> result = (List<Map<String, String>>) json.get(RESULT);
+            return result.stream()
+                    .collect(toMap(host -> host.get(NAME), host -> Integer.parseInt(host.get(HOSTID)),
+                            (firstVal, secondVal) -> firstVal));
+        }
+    }
+
+}
@@ -0,0 +1,72 @@
+package ru.krsmon.bridge.model;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson of REST API: serialization of SurveyResponse and deserialization of SurveyRequest.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JsonBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int entries;
+
+    private ObjectWriter responseWriter;
+    private ObjectReader requestReader;
+    private SurveyResponse response;
+    private byte[] request;
+
+    @Setup
+    public void setup() throws Exception {
+        final ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build();
+        responseWriter = mapper.writerFor(SurveyResponse.class);
+        requestReader = mapper.readerFor(SurveyRequest.class);
+
+        final Map<String, String> discovery = new HashMap<>();
+        final Map<String, DeviceStatus> result = new HashMap<>();
+        final StringJoiner devices = new StringJoiner(",", "[", "]");
+        for (int i = 0; i < entries; i++) {
+            final String mac = "B8:27:EB:%02X:%02X:%02X".formatted(i / 65536 % 256, i / 256 % 256, i % 256);
+            final String ip = "10.%s.%s.%s".formatted(i / 65536 % 256, i / 256 % 256, i % 256);
+            discovery.put(mac, ip);
+            result.put("DEVICE" + i, new DeviceStatus(1, "ping: packet loss 0%"));
+            devices.add("""
+                    {"mac":"%s","type":"DVR","ip":"%s","http":80,"media":554,"service":0,"key":"DEVICE%s","spec":null}"""
+                    .formatted(mac, ip, i));
+        }
+        response = SurveyResponse.builder()
+                .code(200)
+                .message("Success")
+                .discovery(discovery)
+                .result(result)
+                .checkedAt("2024-01-01T00:00:00")
+                .build();
+        request = """
+                {"zabbixId":10084,"ip":"10.0.0.1","name":"router","login":"admin","password":"admin",\
+                "http":80,"service":22,"devices":%s}""".formatted(devices).getBytes();
+    }
+
+    @Benchmark
+    public byte[] serializeResponse() throws Exception {
+        return responseWriter.writeValueAsBytes(response);
+    }
+
+    @Benchmark
+    public SurveyRequest deserializeRequest() throws Exception {
+        return requestReader.readValue(request);
+    }
+
+}
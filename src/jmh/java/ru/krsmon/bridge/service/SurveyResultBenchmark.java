@@ -0,0 +1,75 @@
+package ru.krsmon.bridge.service;
+
+import org.openjdk.jmh.annotations.*;
+import ru.krsmon.bridge.model.Device;
+import ru.krsmon.bridge.model.DeviceStatus;
+import ru.krsmon.bridge.model.DeviceType;
+import ru.krsmon.bridge.model.SurveyRequest;
+import ru.krsmon.bridge.model.SurveyResponse;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static ru.krsmon.bridge.model.DeviceStatus.Status.OFFLINE;
+
+/**
+ * Assembling of survey response: completeResults, errorResult and mac2key.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SurveyResultBenchmark {
+    private static final String[] KEYS = {"DVR1", "DVR2", "CAM1", "CAM2", "KEEPER1", "KEEPER2", "HOTSPOT1",
+            "TERMINAL1", "TERMINAL2", "KKT1", "KKT2"};
+
+    @Param({"10", "100", "1000"})
+    private int entries;
+
+    private final Map<String, DeviceStatus> resultMap = new HashMap<>();
+    private final Map<String, String> arpMap = new HashMap<>();
+    private final Map<String, String> mac2Key = new HashMap<>();
+    private SurveyRequest request;
+
+    @Setup
+    public void setup() {
+        final Set<Device> devices = new HashSet<>();
+        for (int i = 0; i < entries; i++) {
+            final String mac = "B8:27:EB:%02X:%02X:%02X".formatted(i / 65536 % 256, i / 256 % 256, i % 256);
+            arpMap.put(mac, "10.%s.%s.%s".formatted(i / 65536 % 256, i / 256 % 256, i % 256));
+            if (i < KEYS.length) {
+                final Device device = new Device();
+                device.setMac(mac);
+                device.setKey(KEYS[i]);
+                device.setType(DeviceType.DVR);
+                devices.add(device);
+                mac2Key.put(mac, KEYS[i]);
+                resultMap.put(KEYS[i], new DeviceStatus(1, "ping: packet loss 0%"));
+            }
+        }
+        request = new SurveyRequest();
+        request.setIp("10.0.0.1");
+        request.setDevices(devices);
+    }
+
+    @Benchmark
+    public SurveyResponse completeResults() {
+        // completeResults renames keys of arp map in place
+        return AbstractRouterClient.completeResults(resultMap, new StringBuilder(), new HashMap<>(arpMap), mac2Key);
+    }
+
+    @Benchmark
+    public Map<String, DeviceStatus> errorResult() {
+        return SurveyResponse.errorResult(OFFLINE, resultMap);
+    }
+
+    @Benchmark
+    public Map<String, String> mac2key() {
+        return request.mac2key();
+    }
+
+}
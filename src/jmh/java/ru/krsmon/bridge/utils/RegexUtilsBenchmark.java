@@ -0,0 +1,99 @@
+package ru.krsmon.bridge.utils;
+
+import org.openjdk.jmh.annotations.*;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsers of ARP and ping output: single-pass scanners against regex reference on brand outputs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegexUtilsBenchmark {
+
+    @Param({"10", "100", "1000"})
+    private int entries;
+
+    @Param({"KEENETIC", "MIKROTIK", "PROC_NET_ARP"})
+    private String format;
+
+    private String arp;
+    private String ping;
+
+    @Setup
+    public void setup() {
+        final StringBuilder arpBuilder = new StringBuilder();
+        final StringBuilder pingBuilder = new StringBuilder();
+        switch (format) {
+            case "KEENETIC" -> {
+                arpBuilder.append("\n          ip                mac           interface\n");
+                arpBuilder.append("  ============== ================= ============\n");
+                for (int i = 0; i < entries; i++)
+                    arpBuilder.append("  %-14s %s   Home\n".formatted(ip(i), mac(i)));
+                arpBuilder.append("(config)>");
+                pingBuilder.append("Sending ICMP ECHO request to 192.168.1.10\n");
+                for (int i = 0; i < entries; i++)
+                    pingBuilder.append("40 bytes from 192.168.1.10: seq=%s, ttl=64, time=0.455 ms.\n".formatted(i));
+                pingBuilder.append("\n--- 192.168.1.10 ping statistics ---\n");
+                pingBuilder.append("%s packets transmitted, %s packets received, 0%% packet loss,\n".formatted(entries, entries));
+            }
+            case "MIKROTIK" -> {
+                arpBuilder.append("Flags: X - disabled, I - invalid, H - DHCP, D - dynamic, P - published, C - complete\n");
+                arpBuilder.append(" #    ADDRESS         MAC-ADDRESS       INTERFACE\n");
+                for (int i = 0; i < entries; i++)
+                    arpBuilder.append(" %-4s DC %-15s %s bridge\n".formatted(i, ip(i), mac(i).toUpperCase()));
+                pingBuilder.append("  SEQ HOST                                     SIZE TTL TIME  STATUS\n");
+                for (int i = 0; i < entries; i++)
+                    pingBuilder.append("  %3s 192.168.88.10                              56  64 0ms\n".formatted(i));
+                pingBuilder.append("    sent=%s received=%s packet-loss=0%% min-rtt=0ms avg-rtt=0ms max-rtt=1ms\n"
+                        .formatted(entries, entries));
+            }
+            default -> {
+                arpBuilder.append("IP address       HW type     Flags       HW address            Mask     Device\n");
+                for (int i = 0; i < entries; i++)
+                    arpBuilder.append("%-16s 0x1         0x2         %s     *        br0\n".formatted(ip(i), mac(i)));
+                pingBuilder.append("PING 192.168.1.10 (192.168.1.10) 56(84) bytes of data.\n");
+                for (int i = 0; i < entries; i++)
+                    pingBuilder.append("64 bytes from 192.168.1.10: icmp_seq=%s ttl=64 time=0.045 ms\n".formatted(i + 1));
+                pingBuilder.append("\n--- 192.168.1.10 ping statistics ---\n");
+                pingBuilder.append("%s packets transmitted, %s received, 0%% packet loss, time 0ms\n".formatted(entries, entries));
+                pingBuilder.append("rtt min/avg/max/mdev = 0.045/0.045/0.045/0.000 ms\n");
+            }
+        }
+        arp = arpBuilder.toString();
+        ping = pingBuilder.toString();
+    }
+
+    @Benchmark
+    public Map<String, String> arpScanner() {
+        return RegexUtils.getArpMap(arp);
+    }
+
+    @Benchmark
+    public Map<String, String> arpRegex() {
+        return RegexReference.getArpMapRegex(arp);
+    }
+
+    @Benchmark
+    public Map.Entry<Boolean, String> pingScanner() {
+        return RegexUtils.toPingResult(ping);
+    }
+
+    @Benchmark
+    public Map.Entry<Boolean, String> pingRegex() {
+        return RegexReference.toPingResultRegex(ping);
+    }
+
+    private static String ip(int index) {
+        return "10.%s.%s.%s".formatted(index / 65536 % 256, index / 256 % 256, index % 256);
+    }
+
+    private static String mac(int index) {
+        return "b8:27:eb:%02x:%02x:%02x".formatted(index / 65536 % 256, index / 256 % 256, index % 256);
+    }
+
+}
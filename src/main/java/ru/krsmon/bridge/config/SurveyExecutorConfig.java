@@ -0,0 +1,30 @@
+package ru.krsmon.bridge.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Slf4j
+@Configuration
+public class SurveyExecutorConfig {
+
+    /**
+     * Executor of survey pipeline, virtual thread per survey on Java 21+ runtime,
+     * fixed pool of platform threads sized by global survey limit otherwise.
+     */
+    @Bean(destroyMethod = "shutdown")
+    ExecutorService surveyExecutor(@Value("${bridge.survey.max-concurrent}") Integer maxConcurrent) {
+        try {
+            var executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            log.info("SURVEY: Executor on virtual threads.");
+            return executor;
+        } catch (ReflectiveOperationException ex) {
+            log.info("SURVEY: Virtual threads not available, executor on '%s' platform threads.".formatted(maxConcurrent));
+            return Executors.newFixedThreadPool(maxConcurrent);
+        }
+    }
+
+}
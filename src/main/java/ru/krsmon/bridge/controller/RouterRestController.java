@@ -1,37 +1,73 @@
 package ru.krsmon.bridge.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.lang.NonNull;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
-import ru.krsmon.bridge.model.Brand;
-import ru.krsmon.bridge.model.Protocol;
-import ru.krsmon.bridge.model.SurveyRequest;
-import ru.krsmon.bridge.model.SurveyResponse;
-import ru.krsmon.bridge.service.RouterClient;
-import java.util.Map;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import ru.krsmon.bridge.model.*;
+import ru.krsmon.bridge.service.SurveyService;
+import ru.krsmon.bridge.service.pool.RouterWorkScheduler.Lane;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import static org.springframework.web.bind.annotation.RequestMethod.POST;
-import static ru.krsmon.bridge.model.Brand.TPLINK;
-import static ru.krsmon.bridge.service.AbstractRouterClient.executeSurveyShort;
 
+@Slf4j
 @Validated
 @RestController
 @RequiredArgsConstructor
 @RequestMapping("/router")
 @CrossOrigin(methods = POST, maxAge = 3600)
 public class RouterRestController {
-    protected final Map<String, RouterClient> clients;
+    protected static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+    protected static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType(APPLICATION_NDJSON_VALUE);
+    protected final SurveyService surveyService;
+    protected final ObjectMapper mapper;
+
+    @Value("${bridge.survey.batch-timeout}")
+    private Long batchTimeout;
 
     @PostMapping("/{brand}/{protocol}/survey")
     @Timed(value = "survey.timed", description = "Time to check router devices.")
-    public ResponseEntity<SurveyResponse> survey(@PathVariable Brand brand,
-                                                 @PathVariable Protocol protocol,
-                                                 @RequestBody SurveyRequest request) {
-        return !TPLINK.equals(brand) && clients.containsKey(protocol.name())
-                ? ResponseEntity.ok(clients.get(protocol.name()).executeFullSurvey(request, brand))
-                : ResponseEntity.ok(executeSurveyShort(request, false));
+    public CompletableFuture<ResponseEntity<SurveyResponse>> survey(@PathVariable Brand brand,
+                                                                    @PathVariable Protocol protocol,
+                                                                    @RequestBody SurveyRequest request) {
+        return surveyService.survey(brand, protocol, request).thenApply(ResponseEntity::ok);
+    }
+
+    @PostMapping(value = "/survey/batch", produces = APPLICATION_NDJSON_VALUE)
+    @Timed(value = "survey.batch.timed", description = "Time to check devices of router batch.")
+    public ResponseEntity<ResponseBodyEmitter> surveyBatch(@RequestBody List<BatchSurveyRequest> requests) {
+        final ResponseBodyEmitter emitter = new ResponseBodyEmitter(batchTimeout * 1000);
+        CompletableFuture.allOf(requests.stream()
+                        .map(request -> surveyService.survey(request.getBrand(), request.getProtocol(), request,
+                                        Lane.BACKGROUND)
+                                .exceptionally(ex -> SurveyResponse.builder()
+                                        .code(500)
+                                        .message(ex.getLocalizedMessage())
+                                        .build())
+                                .thenAccept(response -> send(emitter, new BatchSurveyResult(request.getName(),
+                                        request.getIp(), request.getBrand(), request.getProtocol(), response))))
+                        .toArray(CompletableFuture[]::new))
+                .whenComplete((ignored, ex) -> emitter.complete());
+        return ResponseEntity.ok().contentType(APPLICATION_NDJSON).body(emitter);
+    }
+
+    private void send(@NonNull ResponseBodyEmitter emitter, @NonNull BatchSurveyResult result) {
+        try {
+            // Each result is written and flushed as one line as soon as router survey is finished
+            emitter.send(mapper.writeValueAsString(result) + "\n", APPLICATION_NDJSON);
+        } catch (Exception ex) {
+            log.warn("SURVEY: Fail to send batch result of '%s', message: '%s'"
+                    .formatted(result.name(), ex.getLocalizedMessage()));
+        }
     }
 
 }
@@ -1,35 +1,97 @@
 package ru.krsmon.bridge.external.telegram;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.actuate.health.Health;
 import org.springframework.boot.actuate.health.HealthIndicator;
 import org.springframework.context.event.ContextRefreshedEvent;
 import org.springframework.context.event.EventListener;
+import org.springframework.lang.NonNull;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.bots.TelegramLongPollingBot;
 import org.telegram.telegrambots.meta.TelegramBotsApi;
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
 import org.telegram.telegrambots.meta.generics.BotSession;
 import org.telegram.telegrambots.updatesreceivers.DefaultBotSession;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
+import static java.lang.System.currentTimeMillis;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.stream.Collectors.toMap;
 
 @Slf4j
 @Component
 public class BotManager implements HealthIndicator {
+    protected static final int MAX_TEXT_LENGTH = 4096;
+    protected static final long DRAIN_INTERVAL = 100;
     protected final Map<String, BotSession> botSessionMap = new LinkedHashMap<>();
+    protected final ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
+    protected final Map<String, Outgoing> outgoing = new LinkedHashMap<>();
     protected final Set<TelegramLongPollingBot> bots;
     protected final TelegramBotsApi telegramBotsApi;
+    protected final MeterRegistry registry;
+    protected Counter sent;
+    protected Counter merged;
+    protected Counter dropped;
+    protected double tokens;
+    protected long refilledAt;
+    protected long pausedUntil;
+
+    @Value("${external.bots.rate}")
+    private Double rate;
+
+    @Value("${external.bots.burst}")
+    private Integer burst;
+
+    @Value("${external.bots.maxQueued}")
+    private Integer maxQueued;
 
     @SneakyThrows
-    public BotManager(Set<TelegramLongPollingBot> bots) {
+    public BotManager(Set<TelegramLongPollingBot> bots, MeterRegistry registry) {
         this.bots = bots;
+        this.registry = registry;
         this.telegramBotsApi = new TelegramBotsApi(DefaultBotSession.class);
     }
 
+    @PostConstruct
+    public void start() {
+        Gauge.builder("telegram.queued", this, BotManager::queued)
+                .description("Chats with messages waiting for rate limiter.")
+                .register(registry);
+        sent = Counter.builder("telegram.sent")
+                .description("Messages sent to telegram.")
+                .register(registry);
+        merged = Counter.builder("telegram.merged")
+                .description("Messages merged into queued message of the same chat.")
+                .register(registry);
+        dropped = Counter.builder("telegram.dropped")
+                .description("Messages dropped because queue is full or telegram rejected them.")
+                .register(registry);
+        tokens = burst;
+        refilledAt = currentTimeMillis();
+        executorService.scheduleWithFixedDelay(this::drain, DRAIN_INTERVAL, DRAIN_INTERVAL, MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executorService.shutdown();
+    }
+
     @EventListener({ContextRefreshedEvent.class})
     public void init() {
         try {
@@ -43,6 +105,102 @@ public class BotManager implements HealthIndicator {
         }
     }
 
+    /**
+     * Queue message to chat, never blocks the caller. Message to chat with queued message is merged into it,
+     * so chat gets one message per turn of rate limiter.
+     *
+     * @param bot    bot of chat
+     * @param chatId ID чата
+     * @param text   text of message
+     * @return false if queue is full and message is dropped
+     */
+    public boolean send(@NonNull TelegramLongPollingBot bot, long chatId, @NonNull String text) {
+        final String key = "%s:%s".formatted(bot.getBotUsername(), chatId);
+        synchronized (outgoing) {
+            final Outgoing queued = outgoing.get(key);
+            if (queued != null) {
+                queued.append(text);
+                merged.increment();
+                return true;
+            }
+            if (outgoing.size() < maxQueued) {
+                outgoing.put(key, new Outgoing(bot, chatId, text));
+                return true;
+            }
+        }
+        dropped.increment();
+        log.warn("TELEGRAM API: Queue is full, message to chat '%s' dropped.".formatted(chatId));
+        return false;
+    }
+
+    /**
+     * Token bucket: rate messages per second, up to burst at once
+     */
+    private void drain() {
+        final List<Outgoing> batch = new ArrayList<>();
+        synchronized (outgoing) {
+            final long now = currentTimeMillis();
+            tokens = Math.min(burst, tokens + (now - refilledAt) * rate / 1000);
+            refilledAt = now;
+            if (now < pausedUntil) return;
+
+            final Iterator<Outgoing> queued = outgoing.values().iterator();
+            while (tokens >= 1 && queued.hasNext()) {
+                batch.add(queued.next());
+                queued.remove();
+                tokens--;
+            }
+        }
+        batch.forEach(this::execute);
+    }
+
+    private void execute(@NonNull Outgoing message) {
+        final SendMessage request = new SendMessage();
+        request.setChatId(message.chatId);
+        request.setText(message.text.toString());
+        request.setDisableWebPagePreview(true);
+        try {
+            message.bot.executeAsync(request).whenComplete((result, ex) -> {
+                if (ex == null) {
+                    sent.increment();
+                    return;
+                }
+                final Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+                if (cause instanceof TelegramApiRequestException apiEx && apiEx.getParameters() != null
+                        && apiEx.getParameters().getRetryAfter() != null) {
+                    // Rate limit of telegram, all sending is paused and message is queued again
+                    retry(message, apiEx.getParameters().getRetryAfter());
+                    return;
+                }
+                dropped.increment();
+                log.warn("TELEGRAM API: Fail to send message to chat '%s', message: '%s'"
+                        .formatted(message.chatId, cause.getLocalizedMessage()));
+            });
+        } catch (Exception ex) {
+            dropped.increment();
+            log.warn("TELEGRAM API: Fail to send message to chat '%s', message: '%s'"
+                    .formatted(message.chatId, ex.getLocalizedMessage()));
+        }
+    }
+
+    private void retry(@NonNull Outgoing message, int retryAfter) {
+        log.warn("TELEGRAM API: Too many requests, sending is paused for '%s' sec.".formatted(retryAfter));
+        synchronized (outgoing) {
+            pausedUntil = Math.max(pausedUntil, currentTimeMillis() + retryAfter * 1000L);
+            // Failed message is older than message queued since, it goes first
+            final String key = "%s:%s".formatted(message.bot.getBotUsername(), message.chatId);
+            final Outgoing newer = outgoing.remove(key);
+            if (newer != null) message.append(newer.text.toString());
+            outgoing.put(key, message);
+        }
+    }
+
+    private int queued() {
+        synchronized (outgoing) {
+            return outgoing.size();
+        }
+    }
+
     @Override
     public Health health() {
         return (botSessionMap.values().stream().anyMatch(session -> !session.isRunning()) ? Health.down() : Health.up())
@@ -52,4 +210,32 @@ public class BotManager implements HealthIndicator {
                 .build();
     }
 
+    protected static class Outgoing {
+        private final TelegramLongPollingBot bot;
+        private final long chatId;
+        private final StringBuilder text;
+
+        private Outgoing(@NonNull TelegramLongPollingBot bot, long chatId, @NonNull String text) {
+            this.bot = bot;
+            this.chatId = chatId;
+            this.text = new StringBuilder(text);
+            trim();
+        }
+
+        private void append(@NonNull String next) {
+            text.append("\n\n").append(next);
+            trim();
+        }
+
+        /**
+         * Message is limited by telegram, oldest lines are cut first
+         */
+        private void trim() {
+            if (text.length() <= MAX_TEXT_LENGTH) return;
+            final int excess = text.length() - MAX_TEXT_LENGTH;
+            final int lineEnd = text.indexOf("\n", excess);
+            text.delete(0, lineEnd < 0 ? excess : lineEnd + 1);
+        }
+    }
+
 }
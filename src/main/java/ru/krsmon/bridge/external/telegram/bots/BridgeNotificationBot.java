@@ -4,10 +4,11 @@ import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.io.IOUtils;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
 import org.springframework.lang.NonNull;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.bots.TelegramLongPollingBot;
@@ -17,15 +18,27 @@ import org.telegram.telegrambots.meta.api.methods.updatingmessages.DeleteMessage
 import org.telegram.telegrambots.meta.api.objects.InputFile;
 import org.telegram.telegrambots.meta.api.objects.Message;
 import org.telegram.telegrambots.meta.api.objects.Update;
+import ru.krsmon.bridge.external.telegram.BotManager;
 import ru.krsmon.bridge.external.zabbix.service.ZabbixService;
 import ru.krsmon.bridge.external.zabbix.service.impl.ZabbixServiceImpl;
+import ru.krsmon.bridge.model.DeviceStateChangedEvent;
+import ru.krsmon.bridge.model.DeviceStateChangedEvent.Change;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 
 import static java.lang.String.valueOf;
-import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.lang.System.currentTimeMillis;
 import static java.time.LocalDate.now;
 import static java.util.Arrays.stream;
-import static java.util.Objects.nonNull;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static ru.krsmon.bridge.model.DeviceStatus.Status.OFFLINE;
+import static ru.krsmon.bridge.model.DeviceStatus.Status.ONLINE;
 
 @Slf4j
 @Component
@@ -33,7 +46,14 @@ import static java.util.Objects.nonNull;
 @ConditionalOnProperty(name = "external.bots.bridgeNotifyBot.enabled", havingValue = "true")
 @ConditionalOnBean(ZabbixServiceImpl.class)
 public class BridgeNotificationBot extends TelegramLongPollingBot {
+    protected static final int MAX_TRANSITIONS = 10_000;
+    protected final ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
+    protected final Map<String, Transition> transitions = new LinkedHashMap<>();
     protected final ZabbixService zabbixService;
+    protected final ObjectProvider<BotManager> botManager;
+    protected long windowStartedAt;
+    protected long lastChangeAt;
+    protected int overflow;
 
     @Getter
     @Value("${external.bots.bridgeNotifyBot.botUsername}")
@@ -46,6 +66,106 @@ public class BridgeNotificationBot extends TelegramLongPollingBot {
     @Value("${external.bots.adminId}")
     protected Long adminId;
 
+    @Value("${external.bots.bridgeNotifyBot.baseUrl}")
+    protected String baseUrl;
+
+    @Value("${external.bots.bridgeNotifyBot.notifyChats}")
+    protected List<Long> notifyChats;
+
+    @Value("${external.bots.bridgeNotifyBot.digestWindow}")
+    protected Integer digestWindow;
+
+    @Value("${external.bots.bridgeNotifyBot.digestMaxWindow}")
+    protected Integer digestMaxWindow;
+
+    @Value("${external.bots.bridgeNotifyBot.digestMaxLines}")
+    protected Integer digestMaxLines;
+
+    @PostConstruct
+    public void start() {
+        getOptions().setBaseUrl(baseUrl);
+        if (notifyChats.isEmpty() && adminId != 0) notifyChats = List.of(adminId);
+        executorService.scheduleWithFixedDelay(this::flushDigest, 1, 1, SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executorService.shutdown();
+    }
+
+    /**
+     * Collect ONLINE/OFFLINE transitions of devices into digest, called from survey threads so it never sends
+     */
+    @EventListener
+    public void onDeviceStateChanged(@NonNull DeviceStateChangedEvent event) {
+        synchronized (transitions) {
+            for (Change change : event.changes()) {
+                if (change.previous() == null || !isFlip(change.previous().code(), change.current().code())) continue;
+                final String key = "%s|%s".formatted(event.request().routerKey(), change.key());
+                final Transition first = transitions.get(key);
+                if (first == null && transitions.size() >= MAX_TRANSITIONS) {
+                    overflow++;
+                    continue;
+                }
+                transitions.put(key, new Transition(event.request().getName(), event.request().getIp(), change.key(),
+                        first == null ? change.previous().code() : first.from(), change.current().code()));
+                lastChangeAt = currentTimeMillis();
+                if (windowStartedAt == 0) windowStartedAt = lastChangeAt;
+            }
+        }
+    }
+
+    private static boolean isFlip(int from, int to) {
+        return (from == ONLINE.getCode() && to == OFFLINE.getCode()) || (from == OFFLINE.getCode() && to == ONLINE.getCode());
+    }
+
+    /**
+     * Sliding window: digest is sent after quiet window without transitions or when max window is passed
+     */
+    private void flushDigest() {
+        final List<Transition> batch;
+        final int skipped;
+        synchronized (transitions) {
+            final long now = currentTimeMillis();
+            if (windowStartedAt == 0
+                    || (now - lastChangeAt < digestWindow * 1000L && now - windowStartedAt < digestMaxWindow * 1000L))
+                return;
+            // Device flapped back inside window is not reported
+            batch = transitions.values().stream().filter(transition -> transition.from() != transition.to()).toList();
+            skipped = overflow;
+            transitions.clear();
+            windowStartedAt = 0;
+            overflow = 0;
+        }
+        if (batch.isEmpty() && skipped == 0) return;
+
+        try {
+            final String digest = toDigest(batch, skipped);
+            final BotManager manager = botManager.getObject();
+            notifyChats.forEach(chatId -> manager.send(this, chatId, digest));
+            log.info("NOTIFY: Digest of '%s' transitions queued to '%s' chats.".formatted(batch.size(), notifyChats.size()));
+        } catch (Exception ex) {
+            log.warn("NOTIFY: Fail to queue digest of '%s' transitions, message: '%s'"
+                    .formatted(batch.size(), ex.getLocalizedMessage()));
+        }
+    }
+
+    @NonNull
+    private String toDigest(@NonNull List<Transition> batch, int skipped) {
+        final long offline = batch.stream().filter(transition -> transition.to() == OFFLINE.getCode()).count();
+        final List<String> lines = new ArrayList<>();
+        lines.add("OFFLINE: %s, ONLINE: %s".formatted(offline, batch.size() - offline));
+        batch.stream()
+                .sorted((first, second) -> Integer.compare(second.to(), first.to()))
+                .limit(digestMaxLines)
+                .forEach(transition -> lines.add("%s %s (%s) %s".formatted(
+                        transition.to() == OFFLINE.getCode() ? OFFLINE : ONLINE,
+                        transition.name(), transition.ip(), transition.key())));
+        final int more = batch.size() - Math.min(batch.size(), digestMaxLines) + skipped;
+        if (more > 0) lines.add("... and %s more".formatted(more));
+        return String.join("\n", lines);
+    }
+
     @Override
     @SneakyThrows
     public void onUpdateReceived(Update update) {
@@ -57,16 +177,18 @@ public class BridgeNotificationBot extends TelegramLongPollingBot {
             final Message message = update.getMessage();
             if (message.getText().startsWith("/export")) {
                 final List<String> groups = stream(message.getText().substring(8).split(",")).toList();
-                var data = zabbixService.exportHosts(groups);
-                if (nonNull(data)) {
-                    var document = new SendDocument();
-                    document.setCaption("Export date: %s".formatted(now()));
-                    document.setChatId(message.getChatId());
-                    document.setReplyToMessageId(message.getMessageId());
-                    document.setProtectContent(true);
-                    document.setDisableContentTypeDetection(true);
-                    document.setDocument(new InputFile(IOUtils.toInputStream(data, UTF_8), "export-host.xml"));
-                    executeAsync(document);
+                var files = zabbixService.exportHosts(groups);
+                if (!files.isEmpty()) {
+                    for (var file : files.entrySet()) {
+                        var document = new SendDocument();
+                        document.setCaption("Export date: %s".formatted(now()));
+                        document.setChatId(message.getChatId());
+                        document.setReplyToMessageId(message.getMessageId());
+                        document.setProtectContent(true);
+                        document.setDisableContentTypeDetection(true);
+                        document.setDocument(new InputFile(file.getValue().toFile(), file.getKey()));
+                        executeAsync(document).whenComplete((sent, ex) -> file.getValue().toFile().delete());
+                    }
                 } else {
                     sendMessage(message, "Fail to export, data is null.");
                 }
@@ -87,4 +209,13 @@ public class BridgeNotificationBot extends TelegramLongPollingBot {
         executeAsync(newMessage);
     }
 
+    /**
+     * Transition of device inside digest window
+     *
+     * @param from code of status before window
+     * @param to   code of last status
+     */
+    private record Transition(String name, String ip, String key, int from, int to) {
+    }
+
 }
@@ -0,0 +1,162 @@
+package ru.krsmon.bridge.external.zabbix;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import ru.krsmon.bridge.external.zabbix.service.ZabbixService;
+import ru.krsmon.bridge.service.pool.RouterWorkScheduler;
+import ru.krsmon.bridge.service.pool.RouterWorkScheduler.Lane;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toMap;
+
+/**
+ * Write-behind queue of zabbix macro updates, changes of one host are coalesced over flush window, last value wins.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MacroUpdateQueue {
+    protected static final String WORK_KEY = "zabbix:macros";
+    protected final ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
+    protected final Map<Integer, Pending> pending = new LinkedHashMap<>();
+    protected final AtomicBoolean isFlushQueued = new AtomicBoolean();
+    protected final ZabbixService zabbixService;
+    protected final RouterWorkScheduler workScheduler;
+    protected final MeterRegistry registry;
+    protected Timer flushTimer;
+    protected Counter dropped;
+
+    @Value("${bridge.macro-queue.window}")
+    private Integer window;
+
+    @Value("${bridge.macro-queue.max-hosts}")
+    private Integer maxHosts;
+
+    @Value("${bridge.macro-queue.max-retries}")
+    private Integer maxRetries;
+
+    @PostConstruct
+    public void start() {
+        Gauge.builder("zabbix.macro.queue.depth", this, MacroUpdateQueue::depth)
+                .description("Hosts with pending macro updates.")
+                .register(registry);
+        flushTimer = Timer.builder("zabbix.macro.queue.flush.timed")
+                .description("Time to flush pending macro updates.")
+                .register(registry);
+        dropped = Counter.builder("zabbix.macro.queue.dropped")
+                .description("Macro updates dropped because queue is full.")
+                .register(registry);
+        executorService.scheduleWithFixedDelay(this::scheduleFlush, window, window, SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executorService.shutdown();
+        flush();
+    }
+
+    /**
+     * Queue macros of host, never blocks the caller
+     *
+     * @param hostId ID хоста
+     * @param macros карта макрос/значение
+     * @return false if queue is full and update is dropped
+     */
+    public boolean enqueue(int hostId, @NonNull Map<String, String> macros) {
+        synchronized (pending) {
+            final Pending current = pending.get(hostId);
+            if (current != null) {
+                current.macros().putAll(macros);
+                return true;
+            }
+            if (pending.size() < maxHosts) {
+                pending.put(hostId, new Pending(new HashMap<>(macros), 0));
+                return true;
+            }
+        }
+
+        // Backpressure: flush ahead of window, drop the update instead of blocking survey
+        scheduleFlush();
+        dropped.increment();
+        log.warn("ZABBIX: Macro queue is full, update of host '%s' dropped.".formatted(hostId));
+        return false;
+    }
+
+    public int depth() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    /**
+     * Flush and its retries are background work of scheduler, at most one flush is queued
+     */
+    private void scheduleFlush() {
+        if (!isFlushQueued.compareAndSet(false, true)) return;
+        workScheduler.submit(Lane.BACKGROUND, WORK_KEY, null, () -> {
+            isFlushQueued.set(false);
+            flush();
+            return null;
+        });
+    }
+
+    private void flush() {
+        final Map<Integer, Pending> batch;
+        synchronized (pending) {
+            if (pending.isEmpty()) return;
+            batch = new LinkedHashMap<>(pending);
+            pending.clear();
+        }
+
+        flushTimer.record(() -> {
+            Set<Integer> saved;
+            try {
+                saved = zabbixService.updateMacros(batch.entrySet().stream()
+                        .collect(toMap(Map.Entry::getKey, entry -> entry.getValue().macros())));
+            } catch (Exception ex) {
+                log.warn("ZABBIX: Fail to flush macros, message: '%s'".formatted(ex.getLocalizedMessage()));
+                saved = Set.of();
+            }
+            for (var update : batch.entrySet()) {
+                if (!saved.contains(update.getKey())) retry(update.getKey(), update.getValue());
+            }
+        });
+        log.info("ZABBIX: Flushed macros of '%s' hosts.".formatted(batch.size()));
+    }
+
+    private void retry(int hostId, @NonNull Pending failed) {
+        if (failed.attempts() + 1 >= maxRetries) {
+            dropped.increment();
+            log.warn("ZABBIX: Macros of host '%s' dropped after '%s' attempts.".formatted(hostId, maxRetries));
+            return;
+        }
+
+        synchronized (pending) {
+            // Values queued after failed flush are newer and win
+            final Map<String, String> macros = new HashMap<>(failed.macros());
+            final Pending newer = pending.get(hostId);
+            if (newer != null) macros.putAll(newer.macros());
+            pending.put(hostId, new Pending(macros, failed.attempts() + 1));
+        }
+    }
+
+    private record Pending(Map<String, String> macros, int attempts) {
+    }
+
+}
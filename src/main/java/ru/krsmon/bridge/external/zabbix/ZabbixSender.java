@@ -0,0 +1,122 @@
+package ru.krsmon.bridge.external.zabbix;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import ru.krsmon.bridge.external.zabbix.model.ZabbixSenderItem;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+import static ru.krsmon.bridge.external.zabbix.model.ZabbixConstrains.*;
+
+/**
+ * Client of zabbix trapper (sender) protocol, items are sent in batches, one TCP connection per batch.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ZabbixSender {
+    protected static final byte[] SIGNATURE = {'Z', 'B', 'X', 'D'};
+    protected static final byte FLAG_PROTOCOL = 0x01;
+    protected static final byte FLAG_COMPRESSED = 0x02;
+    protected static final byte FLAG_LARGE = 0x04;
+    protected static final int MAX_RESPONSE_SIZE = 1024 * 1024;
+    protected static final Pattern PROCESSED = Pattern.compile("processed: (\\d+); failed: (\\d+)");
+    protected final ObjectMapper mapper;
+
+    @Value("${external.zabbix.sender.host}")
+    private String host;
+
+    @Value("${external.zabbix.sender.port}")
+    private Integer port;
+
+    @Value("${external.zabbix.sender.timeout}")
+    private Integer timeout;
+
+    @Value("${external.zabbix.sender.batch-size}")
+    private Integer batchSize;
+
+    /**
+     * Send values of trapper items
+     *
+     * @param items values
+     * @return count of values processed by zabbix, failed batches are not retried
+     */
+    public int send(@NonNull List<ZabbixSenderItem> items) {
+        int processed = 0;
+        for (int from = 0; from < items.size(); from += batchSize) {
+            final List<ZabbixSenderItem> batch = items.subList(from, Math.min(from + batchSize, items.size()));
+            try {
+                processed += sendBatch(batch);
+            } catch (Exception ex) {
+                log.warn("ZABBIX: Fail to send '%s' values to '%s:%s', message: '%s'"
+                        .formatted(batch.size(), host, port, ex.getLocalizedMessage()));
+            }
+        }
+        return processed;
+    }
+
+    private int sendBatch(@NonNull List<ZabbixSenderItem> batch) throws IOException {
+        final byte[] body = mapper.writeValueAsBytes(Map.of(REQUEST, SENDER_DATA, DATA, batch));
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress(host, port), timeout * 1000);
+            socket.setSoTimeout(timeout * 1000);
+
+            final OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            out.write(SIGNATURE);
+            out.write(FLAG_PROTOCOL);
+            out.write(ByteBuffer.allocate(8).order(LITTLE_ENDIAN).putInt(body.length).putInt(0).array());
+            out.write(body);
+            out.flush();
+
+            final JsonNode response = mapper.readTree(readPacket(new DataInputStream(
+                    new BufferedInputStream(socket.getInputStream()))));
+            final String info = response.path(INFO).asText();
+            if (!SUCCESS.equals(response.path(RESPONSE).asText()))
+                throw new IOException("Zabbix rejected values, response: '%s'".formatted(response));
+
+            final Matcher matcher = PROCESSED.matcher(info);
+            if (!matcher.find()) return batch.size();
+            if (!"0".equals(matcher.group(2)))
+                log.warn("ZABBIX: Sender values partly failed, info: '%s'".formatted(info));
+            return Integer.parseInt(matcher.group(1));
+        }
+    }
+
+    @NonNull
+    private static byte[] readPacket(@NonNull DataInputStream in) throws IOException {
+        final byte[] signature = new byte[SIGNATURE.length];
+        in.readFully(signature);
+        if (!Arrays.equals(signature, SIGNATURE)) throw new IOException("Response is not zabbix protocol packet.");
+
+        final byte flags = in.readByte();
+        if ((flags & FLAG_COMPRESSED) != 0) throw new IOException("Compressed response is not supported.");
+        final boolean isLarge = (flags & FLAG_LARGE) != 0;
+        final byte[] header = new byte[isLarge ? 16 : 8];
+        in.readFully(header);
+        final ByteBuffer lengths = ByteBuffer.wrap(header).order(LITTLE_ENDIAN);
+        final long length = isLarge ? lengths.getLong() : Integer.toUnsignedLong(lengths.getInt());
+        if (length > MAX_RESPONSE_SIZE) throw new IOException("Response exceeds '%s' bytes.".formatted(MAX_RESPONSE_SIZE));
+
+        final byte[] body = new byte[(int) length];
+        in.readFully(body);
+        return body;
+    }
+
+}
@@ -29,4 +29,16 @@ public class ZabbixConstrains {
     public static final String HOSTMACROID = "hostmacroid";
     public static final String SELECT_HOSTS = "selectHosts";
     public static final String MACRO_ROUTER_ID = "{$ROUTER.ID}";
+    public static final String MACRO_PUSH = "{$BRIDGE.PUSH}";
+    public static final String HOST = "host";
+    public static final String KEY = "key";
+    public static final String CLOCK = "clock";
+    public static final String REQUEST = "request";
+    public static final String RESPONSE = "response";
+    public static final String INFO = "info";
+    public static final String SENDER_DATA = "sender data";
+    public static final String SUCCESS = "success";
+    public static final String ITEM_SURVEY = "bridge.survey";
+    public static final String ITEM_DEVICE_STATUS = "bridge.device.status[%s]";
+    public static final String ITEM_DISCOVERY = "bridge.discovery";
 }
@@ -0,0 +1,10 @@
+package ru.krsmon.bridge.external.zabbix.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record ZabbixError(
+        int code,
+        String message,
+        String data) {
+}
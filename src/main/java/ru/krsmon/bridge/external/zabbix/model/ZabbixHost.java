@@ -0,0 +1,15 @@
+package ru.krsmon.bridge.external.zabbix.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import static ru.krsmon.bridge.external.zabbix.model.ZabbixConstrains.HOST;
+import static ru.krsmon.bridge.external.zabbix.model.ZabbixConstrains.HOSTID;
+import static ru.krsmon.bridge.external.zabbix.model.ZabbixConstrains.NAME;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record ZabbixHost(
+        @JsonProperty(HOSTID) int hostId,
+        @JsonProperty(NAME) String name,
+        @JsonProperty(HOST) String host) {
+}
@@ -0,0 +1,14 @@
+package ru.krsmon.bridge.external.zabbix.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.List;
+
+import static ru.krsmon.bridge.external.zabbix.model.ZabbixConstrains.GROUPID;
+import static ru.krsmon.bridge.external.zabbix.model.ZabbixConstrains.HOSTS;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record ZabbixHostGroup(
+        @JsonProperty(GROUPID) String groupId,
+        @JsonProperty(HOSTS) List<ZabbixHost> hosts) {
+}
@@ -0,0 +1,14 @@
+package ru.krsmon.bridge.external.zabbix.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import static ru.krsmon.bridge.external.zabbix.model.ZabbixConstrains.*;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record ZabbixMacro(
+        @JsonProperty(HOSTMACROID) String hostMacroId,
+        @JsonProperty(HOSTID) int hostId,
+        @JsonProperty(MACRO) String macro,
+        @JsonProperty(VALUE) String value) {
+}
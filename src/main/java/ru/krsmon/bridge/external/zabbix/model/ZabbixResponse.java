@@ -0,0 +1,13 @@
+package ru.krsmon.bridge.external.zabbix.model;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ * JSON-RPC response, exactly one of result and error is present
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record ZabbixResponse<T>(
+        Integer id,
+        T result,
+        ZabbixError error) {
+}
@@ -0,0 +1,18 @@
+package ru.krsmon.bridge.external.zabbix.model;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import static ru.krsmon.bridge.external.zabbix.model.ZabbixConstrains.CLOCK;
+import static ru.krsmon.bridge.external.zabbix.model.ZabbixConstrains.HOST;
+import static ru.krsmon.bridge.external.zabbix.model.ZabbixConstrains.KEY;
+import static ru.krsmon.bridge.external.zabbix.model.ZabbixConstrains.VALUE;
+
+/**
+ * Value of trapper item
+ */
+public record ZabbixSenderItem(
+        @JsonProperty(HOST) String host,
+        @JsonProperty(KEY) String key,
+        @JsonProperty(VALUE) String value,
+        @JsonProperty(CLOCK) long clock) {
+}
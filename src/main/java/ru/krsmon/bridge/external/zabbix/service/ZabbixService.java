@@ -1,10 +1,15 @@
 package ru.krsmon.bridge.external.zabbix.service;
 
 import org.springframework.lang.NonNull;
+import ru.krsmon.bridge.external.zabbix.model.ZabbixHost;
+import ru.krsmon.bridge.external.zabbix.model.ZabbixMacro;
 
+import java.nio.file.Path;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 public interface ZabbixService {
 
@@ -12,33 +17,73 @@ public interface ZabbixService {
      * Get ID host by name
      *
      * @param hostName имя хоста
-     * @return ID хост
+     * @return ID хост, 0 if host not found
+     * @throws IllegalStateException if zabbix did not answer, so host may exist
      */
     int getHostId(@NonNull String hostName);
 
+    /**
+     * Get ID of all hosts by name, hosts are requested in pages
+     *
+     * @return map name/ID of hosts, empty if request failed
+     */
+    @NonNull
+    Optional<Map<String, Integer>> getAllHostIds();
+
+    /**
+     * Get ID of hosts by names, names are requested in chunks
+     *
+     * @param hostNames имена хостов
+     * @return map name/ID of found hosts
+     * @throws IllegalStateException if zabbix did not answer, so hosts may exist
+     */
+    @NonNull
+    Map<String, Integer> getHostIds(@NonNull Collection<String> hostNames);
+
     /**
      * Update or create macros into zabbix
      *
      * @param hostId ID хоста
      * @param macros карта макрос/значение
+     * @return true if all macros are saved
      */
-    void updateMacros(int hostId, @NonNull Map<String, String> macros);
+    boolean updateMacros(int hostId, @NonNull Map<String, String> macros);
 
     /**
-     * Export hosts by group names
+     * Update or create macros of many hosts, every host is saved by own requests of JSON-RPC batch
+     *
+     * @param macros карта ID хоста/(макрос/значение)
+     * @return ID of hosts whose macros are saved
+     */
+    @NonNull
+    Set<Integer> updateMacros(@NonNull Map<Integer, Map<String, String>> macros);
+
+    /**
+     * Export hosts by group names into gzip temp files, large export is chunked by export-chunk-size hosts
      *
      * @param groups group names
-     * @return export data in xml format
+     * @return map document name/file with xml export, caller deletes files, empty on failure
      */
-    String exportHosts(@NonNull List<String> groups);
+    @NonNull
+    Map<String, Path> exportHosts(@NonNull List<String> groups);
 
     /**
      * Getting host macros by hostId
      *
      * @param hostId id of hosts
-     * @return macros map
+     * @return macros of host, empty if request failed
      */
-    Map<String, Object> getHostMacros(int hostId);
+    @NonNull
+    Optional<List<ZabbixMacro>> getHostMacros(int hostId);
+
+    /**
+     * Getting macros of hosts
+     *
+     * @param hostIds ids of hosts
+     * @return map host id/macros, hosts failed to receive are absent
+     */
+    @NonNull
+    Map<Integer, List<ZabbixMacro>> getHostMacros(@NonNull Collection<Integer> hostIds);
 
     /**
      * Get group ids by group names
@@ -48,4 +93,13 @@ public interface ZabbixService {
      */
     @NonNull
     Optional<List<String>> getHostIdsByGroupNames(@NonNull List<String> groupNames);
+
+    /**
+     * Get hosts which have user macro, with value of macro
+     *
+     * @param macro имя макроса
+     * @return map host/macro value, empty if request failed
+     */
+    @NonNull
+    Optional<Map<ZabbixHost, String>> getHostsByMacro(@NonNull String macro);
 }
@@ -1,39 +1,64 @@
 package ru.krsmon.bridge.external.zabbix.service.impl;
 
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import io.micrometer.core.annotation.Timed;
 import lombok.RequiredArgsConstructor;
-import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.OkHttpClient;
 import okhttp3.Request;
 import okhttp3.Response;
-import org.jetbrains.annotations.NotNull;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.lang.NonNull;
 import org.springframework.stereotype.Service;
+import ru.krsmon.bridge.external.zabbix.model.ZabbixError;
+import ru.krsmon.bridge.external.zabbix.model.ZabbixHost;
+import ru.krsmon.bridge.external.zabbix.model.ZabbixHostGroup;
+import ru.krsmon.bridge.external.zabbix.model.ZabbixMacro;
 import ru.krsmon.bridge.external.zabbix.model.ZabbixRequest;
+import ru.krsmon.bridge.external.zabbix.model.ZabbixResponse;
 import ru.krsmon.bridge.external.zabbix.service.ZabbixService;
+import ru.krsmon.bridge.utils.JsonRpcUtils;
+import javax.annotation.PostConstruct;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.stream.Stream;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
 
-import static java.util.Collections.emptyMap;
+import static com.fasterxml.jackson.core.JsonToken.FIELD_NAME;
+import static com.fasterxml.jackson.core.JsonToken.START_OBJECT;
 import static java.util.Objects.isNull;
+import static java.util.Objects.nonNull;
+import static java.util.stream.Collectors.toMap;
 import static okhttp3.MediaType.get;
 import static okhttp3.RequestBody.create;
 import static ru.krsmon.bridge.external.zabbix.model.ZabbixConstrains.*;
 
 @Slf4j
 @Service
-@SuppressWarnings("unchecked")
 @RequiredArgsConstructor
 public class ZabbixServiceImpl implements ZabbixService {
     protected final OkHttpClient client;
     protected final ObjectMapper mapper;
+    protected ResultReader<List<ZabbixHost>> hostsReader;
+    protected ResultReader<List<ZabbixMacro>> macrosReader;
+    protected ResultReader<List<ZabbixHostGroup>> groupsReader;
+    protected ObjectReader errorReader;
+    protected ObjectReader batchReader;
 
     @Value("${external.zabbix.url}")
     protected String zabbixUrl;
@@ -41,10 +66,25 @@ public class ZabbixServiceImpl implements ZabbixService {
     @Value("${external.zabbix.token}")
     protected String apiToken;
 
+    @Value("${external.zabbix.batch-size}")
+    protected Integer batchSize;
+
+    @Value("${external.zabbix.export-chunk-size}")
+    protected Integer exportChunkSize;
+
+    @PostConstruct
+    public void init() {
+        hostsReader = new ResultReader<>(mapper.readerFor(new TypeReference<List<ZabbixHost>>() {}));
+        macrosReader = new ResultReader<>(mapper.readerFor(new TypeReference<List<ZabbixMacro>>() {}));
+        groupsReader = new ResultReader<>(mapper.readerFor(new TypeReference<List<ZabbixHostGroup>>() {}));
+        errorReader = mapper.readerFor(ZabbixError.class);
+        batchReader = mapper.readerFor(new TypeReference<List<ZabbixResponse<JsonNode>>>() {});
+    }
+
     @Override
     @Timed(value = "zabbix.get.host.id.timed", description = "Time to getting zabbix host id.")
     public int getHostId(@NonNull String hostName) {
-        int id = 0;
+        final List<ZabbixHost> hosts;
         try {
             log.info("ZABBIX: Get host ID by NAME '%s'...".formatted(hostName));
             var request = ZabbixRequest.builder()
@@ -55,107 +95,189 @@ public class ZabbixServiceImpl implements ZabbixService {
                             FILTER, Map.of(NAME, hostName)
                     )).build();
 
-            var response = apiRequest(request);
-            var hosts = (List<Map<String, String>>) response.get(RESULT);
-
-            if (hosts.isEmpty()) {
-                log.warn("ZABBIX: Hosts lists is empty (not found).");
-            }
-            id = Integer.parseInt(hosts.get(0).get(HOSTID));
+            hosts = apiRequest(request, hostsReader)
+                    .orElseThrow(() -> new IllegalStateException("Zabbix API request failed."));
         } catch (NoClassDefFoundError | Exception exception) {
             log.warn("ZABBIX: Fail getting host, message: '%s'".formatted(exception.getLocalizedMessage()));
+            throw new IllegalStateException("Fail getting host '%s'.".formatted(hostName), exception);
+        }
+
+        if (hosts.isEmpty()) {
+            log.warn("ZABBIX: Hosts lists is empty (not found).");
+            return 0;
         }
-        return id;
+        return hosts.get(0).hostId();
     }
 
+    @NonNull
     @Override
-    @SneakyThrows
-    @Timed(value = "zabbix.update.macros.timed", description = "Time to update zabbix macros.")
-    public void updateMacros(int hostId, @NonNull Map<String, String> macros) {
-        final List<Map<String, String>> hostMacros = (List<Map<String, String>>) getHostMacros(hostId).get(RESULT);
-        final ArrayList<Map<String, String>> macros2Update = new ArrayList<>();
-        final ArrayList<Map<String, String>> macros2Create = new ArrayList<>();
-
-        for (var updMacro : macros.entrySet()) {
-            var targetMap = hostMacros.stream()
-                    .filter(ssMap -> ssMap.containsValue(updMacro.getKey()))
-                    .findFirst();
-
-            if (targetMap.isPresent()) {
-                // UPDATE
-                macros2Update.add(Map.of(
-                        HOSTMACROID, targetMap.get().get(HOSTMACROID),
-                        VALUE, updMacro.getValue()
-                ));
-            } else {
-                // CREATE
-                macros2Create.add(Map.of(
-                        HOSTID, String.valueOf(hostId),
-                        MACRO, updMacro.getKey(),
-                        VALUE, updMacro.getValue()
-                ));
-            }
-        }
+    @Timed(value = "zabbix.get.all.host.ids.timed", description = "Time to getting all zabbix host ids.")
+    public Optional<Map<String, Integer>> getAllHostIds() {
+        try {
+            log.info("ZABBIX: Get ID of all hosts...");
+            // List of IDs is small even for large zabbix, names are requested by pages of IDs
+            var idsRequest = ZabbixRequest.builder()
+                    .method(HOST_GET)
+                    .auth(apiToken)
+                    .params(Map.of(OUTPUT, List.of(HOSTID)))
+                    .build();
+            final List<Integer> ids = apiRequest(idsRequest, hostsReader)
+                    .orElseThrow(() -> new IllegalStateException("Zabbix API request failed."))
+                    .stream()
+                    .map(ZabbixHost::hostId)
+                    .sorted()
+                    .toList();
 
-        if (!macros2Update.isEmpty()) {
-            try {
-                log.info("ZABBIX: Update host macros by hostId '%s'...".formatted(hostId));
+            final Map<String, Integer> hostIds = new HashMap<>();
+            for (var page : chunks(ids)) {
                 var request = ZabbixRequest.builder()
-                        .method(USERMACRO_UPDATE)
+                        .method(HOST_GET)
                         .auth(apiToken)
-                        .params(macros2Update)
-                        .build();
-                apiRequest(request);
-            } catch (NoClassDefFoundError | Exception exception) {
-                log.warn("ZABBIX: Fail updating host macros, message: '%s'".formatted(exception.getLocalizedMessage()));
+                        .params(Map.of(
+                                OUTPUT, List.of(HOSTID, NAME),
+                                HOSTIDS, page.stream().map(String::valueOf).toList()
+                        )).build();
+                apiRequest(request, hostsReader)
+                        .orElseThrow(() -> new IllegalStateException("Zabbix API request failed."))
+                        .forEach(host -> hostIds.putIfAbsent(host.name(), host.hostId()));
             }
+            log.info("ZABBIX: Received ID of '%s' hosts.".formatted(hostIds.size()));
+            return Optional.of(hostIds);
+        } catch (NoClassDefFoundError | Exception exception) {
+            log.warn("ZABBIX: Fail getting all hosts, message: '%s'".formatted(exception.getLocalizedMessage()));
+            return Optional.empty();
         }
+    }
 
-        if (!macros2Create.isEmpty()) {
-            log.info("ZABBIX: Create host macros by hostId '%s'...".formatted(hostId));
+    @NonNull
+    @Override
+    @Timed(value = "zabbix.get.host.ids.timed", description = "Time to getting zabbix host ids.")
+    public Map<String, Integer> getHostIds(@NonNull Collection<String> hostNames) {
+        final Map<String, Integer> hostIds = new HashMap<>();
+        for (var names : chunks(hostNames)) {
             try {
+                log.info("ZABBIX: Get ID of '%s' hosts by NAME...".formatted(names.size()));
                 var request = ZabbixRequest.builder()
-                        .method(USERMACRO_CREATE)
+                        .method(HOST_GET)
                         .auth(apiToken)
-                        .params(macros2Create)
-                        .build();
-                apiRequest(request);
+                        .params(Map.of(
+                                OUTPUT, List.of(HOSTID, NAME),
+                                FILTER, Map.of(NAME, names)
+                        )).build();
+
+                apiRequest(request, hostsReader)
+                        .orElseThrow(() -> new IllegalStateException("Zabbix API request failed."))
+                        .forEach(host -> hostIds.putIfAbsent(host.name(), host.hostId()));
             } catch (NoClassDefFoundError | Exception exception) {
-                log.warn("ZABBIX: Fail creating host macros, message: '%s'".formatted(exception.getLocalizedMessage()));
+                log.warn("ZABBIX: Fail getting hosts, message: '%s'".formatted(exception.getLocalizedMessage()));
+                throw new IllegalStateException("Fail getting '%s' hosts.".formatted(names.size()), exception);
             }
         }
+        return hostIds;
     }
 
+    @Override
+    public boolean updateMacros(int hostId, @NonNull Map<String, String> macros) {
+        return updateMacros(Map.of(hostId, macros)).contains(hostId);
+    }
+
+    @NonNull
+    @Override
+    @Timed(value = "zabbix.update.macros.timed", description = "Time to update zabbix macros.")
+    public Set<Integer> updateMacros(@NonNull Map<Integer, Map<String, String>> macros) {
+        final Map<Integer, List<ZabbixMacro>> hostMacros = getHostMacros(macros.keySet());
+        final Set<Integer> saved = new HashSet<>();
+        final List<ZabbixRequest> requests = new ArrayList<>();
+        final Map<Integer, Integer> request2Host = new HashMap<>();
+
+        for (var host : macros.entrySet()) {
+            final int hostId = host.getKey();
+            if (!hostMacros.containsKey(hostId)) {
+                log.warn("ZABBIX: Fail updating host macros, macros of host '%s' not received".formatted(hostId));
+                continue;
+            }
+
+            final ArrayList<Map<String, String>> macros2Update = new ArrayList<>();
+            final ArrayList<Map<String, String>> macros2Create = new ArrayList<>();
+            for (var updMacro : host.getValue().entrySet()) {
+                var target = hostMacros.get(hostId).stream()
+                        .filter(macro -> updMacro.getKey().equals(macro.macro()))
+                        .findFirst();
+
+                if (target.isPresent()) {
+                    // UPDATE
+                    macros2Update.add(Map.of(
+                            HOSTMACROID, target.get().hostMacroId(),
+                            VALUE, updMacro.getValue()
+                    ));
+                } else {
+                    // CREATE
+                    macros2Create.add(Map.of(
+                            HOSTID, String.valueOf(hostId),
+                            MACRO, updMacro.getKey(),
+                            VALUE, updMacro.getValue()
+                    ));
+                }
+            }
+
+            // Every host has own requests inside batch, so failure of one host doesn't roll back others
+            if (!macros2Update.isEmpty()) {
+                request2Host.put(requests.size() + 1, hostId);
+                requests.add(ZabbixRequest.builder().id(requests.size() + 1).method(USERMACRO_UPDATE).auth(apiToken)
+                        .params(macros2Update).build());
+            }
+            if (!macros2Create.isEmpty()) {
+                request2Host.put(requests.size() + 1, hostId);
+                requests.add(ZabbixRequest.builder().id(requests.size() + 1).method(USERMACRO_CREATE).auth(apiToken)
+                        .params(macros2Create).build());
+            }
+            saved.add(hostId);
+        }
+
+        try {
+            log.info("ZABBIX: Update macros of '%s' hosts...".formatted(saved.size()));
+            final Map<Integer, JsonNode> responses = apiBatchRequest(requests);
+            request2Host.forEach((requestId, hostId) -> {
+                if (!responses.containsKey(requestId)) saved.remove(hostId);
+            });
+        } catch (NoClassDefFoundError | Exception exception) {
+            log.warn("ZABBIX: Fail updating host macros, message: '%s'".formatted(exception.getLocalizedMessage()));
+            saved.removeAll(request2Host.values());
+        }
+        return saved;
+    }
+
+    @NonNull
     @Override
     @Timed(value = "zabbix.export.hosts.timed", description = "Time to export zabbix hosts.")
-    public String exportHosts(@NonNull List<String> groups) {
+    public Map<String, Path> exportHosts(@NonNull List<String> groups) {
         log.info("ZABBIX: Export hosts from groups '%s' to file".formatted(groups));
-        var requestHostIds = new ArrayList<String>();
+        final Map<String, Path> files = new LinkedHashMap<>();
         try {
-            getHostIdsByGroupNames(groups).ifPresent(requestHostIds::addAll);
-
-            var request = ZabbixRequest.builder()
-                    .method(CONFIGURATION_EXPORT)
-                    .auth(apiToken)
-                    .params(Map.of(
-                            OPTIONS, Map.of(HOSTS, requestHostIds),
-                            "format", "xml"
-                    ))
-                    .build();
-
-            var response = apiRequest(request);
-            log.info("ZABBIX: Successfully exported hosts from groups '%s'".formatted(groups));
-            return (String) response.get(RESULT);
+            // Host of several groups is exported once
+            final List<String> hostIds = getHostIdsByGroupNames(groups).orElseThrow().stream().distinct().toList();
+            if (hostIds.size() <= exportChunkSize) {
+                files.put("export-host.xml.gz", exportToFile(hostIds));
+            } else {
+                // Large export is chunked by hosts, so one document stays within Telegram limits
+                for (int from = 0, part = 1; from < hostIds.size(); from += exportChunkSize, part++) {
+                    files.put("export-host-%s.xml.gz".formatted(part),
+                            exportToFile(hostIds.subList(from, Math.min(from + exportChunkSize, hostIds.size()))));
+                }
+            }
+            log.info("ZABBIX: Successfully exported hosts from groups '%s' to '%s' files".formatted(groups, files.size()));
+            return files;
         } catch (Exception ex) {
             log.warn("ZABBIX: Fail export hosts by groups '%s', message: '%s'"
                     .formatted(groups, ex.getLocalizedMessage()));
-            return null;
+            files.values().forEach(file -> file.toFile().delete());
+            return Map.of();
         }
     }
 
     @Override
     @Timed(value = "zabbix.get.host.macros.timed", description = "Time to getting zabbix host macros.")
-    public Map<String, Object> getHostMacros(int hostId) {
+    public Optional<List<ZabbixMacro>> getHostMacros(int hostId) {
         try {
             log.info("ZABBIX: Get host macros by hostId '%s'...".formatted(hostId));
             var request = ZabbixRequest.builder()
@@ -166,13 +288,44 @@ public class ZabbixServiceImpl implements ZabbixService {
                             HOSTIDS, String.valueOf(hostId)
                     )).build();
 
-            var response = apiRequest(request);
+            var response = apiRequest(request, macrosReader);
             log.info("ZABBIX: Map macros from host: '%s'".formatted(response));
             return response;
         } catch (NoClassDefFoundError | Exception exception) {
             log.warn("ZABBIX: Fail getting host macros, message: '%s'".formatted(exception.getLocalizedMessage()));
-            return Map.of();
+            return Optional.empty();
+        }
+    }
+
+    @NonNull
+    @Override
+    @Timed(value = "zabbix.get.hosts.macros.timed", description = "Time to getting macros of zabbix hosts.")
+    public Map<Integer, List<ZabbixMacro>> getHostMacros(@NonNull Collection<Integer> hostIds) {
+        final Map<Integer, List<ZabbixMacro>> hostMacros = new HashMap<>();
+        for (var ids : chunks(hostIds)) {
+            try {
+                log.info("ZABBIX: Get macros of '%s' hosts...".formatted(ids.size()));
+                var request = ZabbixRequest.builder()
+                        .method(USERMACRO_GET)
+                        .auth(apiToken)
+                        .params(Map.of(
+                                OUTPUT, EXTEND,
+                                HOSTIDS, ids.stream().map(String::valueOf).toList()
+                        )).build();
+
+                var response = apiRequest(request, macrosReader);
+                if (response.isEmpty()) continue;
+
+                // Host without macros is absent in result, but it is received too
+                ids.forEach(hostId -> hostMacros.put(hostId, new ArrayList<>()));
+                response.get().forEach(macro -> hostMacros
+                        .computeIfAbsent(macro.hostId(), ignored -> new ArrayList<>())
+                        .add(macro));
+            } catch (NoClassDefFoundError | Exception exception) {
+                log.warn("ZABBIX: Fail getting hosts macros, message: '%s'".formatted(exception.getLocalizedMessage()));
+            }
         }
+        return hostMacros;
     }
 
     @NonNull
@@ -190,10 +343,11 @@ public class ZabbixServiceImpl implements ZabbixService {
                             FILTER, Map.of(NAME, groupNames)
                     )).build();
 
-            var response = apiRequest(request);
+            List<ZabbixHostGroup> groups = apiRequest(request, groupsReader).orElseThrow();
             log.info("ZABBIX: Successfully getting group ids by names.");
-            return Optional.of(((List<Map<String, Object>>) response.get(RESULT)).stream()
-                    .flatMap(this::toHostIds)
+            return Optional.of(groups.stream()
+                    .flatMap(group -> group.hosts().stream())
+                    .map(host -> String.valueOf(host.hostId()))
                     .toList());
         } catch (Exception ex) {
             log.warn("ZABBIX: Fail to getting group ids by names '%s', message '%s'"
@@ -202,35 +356,173 @@ public class ZabbixServiceImpl implements ZabbixService {
         }
     }
 
-    @NotNull
-    private Map<String, Object> apiRequest(@NonNull ZabbixRequest body) throws Exception {
+    @NonNull
+    @Override
+    @Timed(value = "zabbix.get.hosts.by.macro.timed", description = "Time to getting zabbix hosts by macro.")
+    public Optional<Map<ZabbixHost, String>> getHostsByMacro(@NonNull String macro) {
+        try {
+            log.info("ZABBIX: Get hosts by macro '%s'...".formatted(macro));
+            var macrosRequest = ZabbixRequest.builder()
+                    .method(USERMACRO_GET)
+                    .auth(apiToken)
+                    .params(Map.of(
+                            OUTPUT, List.of(HOSTID, MACRO, VALUE),
+                            FILTER, Map.of(MACRO, macro)
+                    )).build();
+            final Map<Integer, String> values = apiRequest(macrosRequest, macrosReader).orElseThrow().stream()
+                    .collect(toMap(ZabbixMacro::hostId, ZabbixMacro::value, (firstVal, secondVal) -> firstVal));
+
+            final Map<ZabbixHost, String> hosts = new HashMap<>();
+            for (var ids : chunks(values.keySet())) {
+                var hostsRequest = ZabbixRequest.builder()
+                        .method(HOST_GET)
+                        .auth(apiToken)
+                        .params(Map.of(
+                                OUTPUT, List.of(HOSTID, HOST, NAME),
+                                HOSTIDS, ids.stream().map(String::valueOf).toList()
+                        )).build();
+                apiRequest(hostsRequest, hostsReader).orElseThrow()
+                        .forEach(host -> hosts.put(host, values.get(host.hostId())));
+            }
+            log.info("ZABBIX: Received '%s' hosts with macro '%s'.".formatted(hosts.size(), macro));
+            return Optional.of(hosts);
+        } catch (NoClassDefFoundError | Exception exception) {
+            log.warn("ZABBIX: Fail getting hosts by macro, message: '%s'".formatted(exception.getLocalizedMessage()));
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Send request and decode "result" straight from response stream
+     *
+     * @param body         request
+     * @param resultReader reader of result type
+     * @return result, empty if request failed or zabbix returned error
+     */
+    @NonNull
+    private <T> Optional<T> apiRequest(@NonNull ZabbixRequest body, @NonNull ResultReader<T> resultReader) throws Exception {
         final Request request = new Request.Builder()
                 .url(zabbixUrl)
-                .post(create(mapper.writeValueAsString(body), get("application/json")))
+                .post(create(mapper.writeValueAsBytes(body), get("application/json")))
                 .build();
         try (Response response = client.newCall(request).execute()) {
             if (!response.isSuccessful() || isNull(response.body())) {
                 log.warn("ZABBIX: Fail request, request '%s', response '%s'"
                         .formatted(body.toString(), isNull(response.body()) ? "null" : response.body().string()));
-                return emptyMap();
+                return Optional.empty();
             }
 
-            Map<String, Object> result = mapper.readValue(response.body().string(), new TypeReference<>() {});
-            if (result.containsKey(ERROR)) {
-                var error = (Map<String, Object>) result.get(ERROR);
-                var message = Optional.of(error.get(MESSAGE)).orElse("n/a");
-                var data = Optional.of(error.get(DATA)).orElse("n/a");
-                log.warn("ZABBIX: Fail validation, message: '%s', data: '%s'".formatted(message, data));
-                return emptyMap();
+            try (JsonParser parser = mapper.getFactory().createParser(response.body().byteStream())) {
+                if (parser.nextToken() != START_OBJECT) throw new IOException("Response is not JSON-RPC object.");
+
+                T result = null;
+                ZabbixError error = null;
+                while (parser.nextToken() == FIELD_NAME) {
+                    final String field = parser.getCurrentName();
+                    parser.nextToken();
+                    if (RESULT.equals(field)) result = resultReader.read(parser);
+                    else if (ERROR.equals(field)) error = errorReader.readValue(parser);
+                    else parser.skipChildren();
+                }
+
+                if (error != null) {
+                    log.warn("ZABBIX: Fail validation, message: '%s', data: '%s'".formatted(error.message(), error.data()));
+                    return Optional.empty();
+                }
+                return Optional.ofNullable(result);
             }
+        }
+    }
+
+    /**
+     * Export hosts into gzip temp file, xml is copied from response stream without buffering whole document
+     *
+     * @param hostIds ids of hosts
+     * @return gzip file of xml export
+     */
+    @NonNull
+    private Path exportToFile(@NonNull List<String> hostIds) throws Exception {
+        var body = ZabbixRequest.builder()
+                .method(CONFIGURATION_EXPORT)
+                .auth(apiToken)
+                .params(Map.of(
+                        OPTIONS, Map.of(HOSTS, hostIds),
+                        "format", "xml"
+                ))
+                .build();
+        final Request request = new Request.Builder()
+                .url(zabbixUrl)
+                .post(create(mapper.writeValueAsBytes(body), get("application/json")))
+                .build();
+
+        final Path file = Files.createTempFile("zabbix-export-", ".xml.gz");
+        try (Response response = client.newCall(request).execute();
+             OutputStream output = new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            if (!response.isSuccessful() || isNull(response.body()))
+                throw new IOException("Fail request, response code '%s'".formatted(response.code()));
 
-            return result;
+            final long size = JsonRpcUtils.copyStringResult(response.body().byteStream(), output);
+            log.info("ZABBIX: Exported '%s' hosts, '%s' bytes of xml".formatted(hostIds.size(), size));
+            return file;
+        } catch (Exception ex) {
+            Files.deleteIfExists(file);
+            throw ex;
         }
     }
 
-    private Stream<String> toHostIds(@NotNull Map<String, Object> groups) {
-        return ((List<Map<String, String>>) groups.get(HOSTS)).stream()
-                .flatMap(hosts -> hosts.values().stream());
+    /**
+     * Send requests as one JSON-RPC batch, requests must have unique id
+     *
+     * @param requests requests
+     * @return map request id/result, failed requests are absent
+     */
+    @NonNull
+    private Map<Integer, JsonNode> apiBatchRequest(@NonNull List<ZabbixRequest> requests) throws Exception {
+        final Map<Integer, JsonNode> results = new HashMap<>();
+        for (var batch : chunks(requests)) {
+            final Request request = new Request.Builder()
+                    .url(zabbixUrl)
+                    .post(create(mapper.writeValueAsBytes(batch), get("application/json")))
+                    .build();
+            try (Response response = client.newCall(request).execute()) {
+                if (!response.isSuccessful() || isNull(response.body())) {
+                    log.warn("ZABBIX: Fail batch request of '%s' requests, response '%s'"
+                            .formatted(batch.size(), isNull(response.body()) ? "null" : response.body().string()));
+                    continue;
+                }
+
+                List<ZabbixResponse<JsonNode>> responses = batchReader.readValue(response.body().byteStream());
+                for (var result : responses) {
+                    if (isNull(result.id())) continue;
+                    if (nonNull(result.error())) {
+                        log.warn("ZABBIX: Fail validation of request '%s', message: '%s', data: '%s'"
+                                .formatted(result.id(), result.error().message(), result.error().data()));
+                        continue;
+                    }
+                    if (nonNull(result.result())) results.put(result.id(), result.result());
+                }
+            }
+        }
+        return results;
+    }
+
+    @NonNull
+    private <T> List<List<T>> chunks(@NonNull Collection<T> items) {
+        final List<T> list = List.copyOf(items);
+        final List<List<T>> chunks = new ArrayList<>();
+        for (int from = 0; from < list.size(); from += batchSize) {
+            chunks.add(list.subList(from, Math.min(from + batchSize, list.size())));
+        }
+        return chunks;
+    }
+
+    /**
+     * Reused reader of typed result
+     */
+    protected record ResultReader<T>(ObjectReader reader) {
+        private T read(@NonNull JsonParser parser) throws IOException {
+            return reader.readValue(parser);
+        }
     }
 
 }
@@ -0,0 +1,11 @@
+package ru.krsmon.bridge.model;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class BatchSurveyRequest extends SurveyRequest {
+    private Brand brand;
+    private Protocol protocol;
+}
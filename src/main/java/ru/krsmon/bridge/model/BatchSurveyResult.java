@@ -0,0 +1,9 @@
+package ru.krsmon.bridge.model;
+
+public record BatchSurveyResult(
+        String name,
+        String ip,
+        Brand brand,
+        Protocol protocol,
+        SurveyResponse response) {
+}
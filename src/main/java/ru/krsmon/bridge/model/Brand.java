@@ -2,14 +2,20 @@ package ru.krsmon.bridge.model;
 
 import lombok.Getter;
 import org.springframework.lang.NonNull;
+import java.util.Collection;
+
+import static java.util.Objects.nonNull;
+import static ru.krsmon.bridge.utils.RegexUtils.PING_BATCH_DONE;
+import static ru.krsmon.bridge.utils.RegexUtils.PING_BLOCK_BEGIN;
+import static ru.krsmon.bridge.utils.RegexUtils.PING_BLOCK_END;
 
 public enum Brand {
-    KEENETIC("(config)>", "show ip arp", "tools ping %s count 1"),
-    MICROTIC(null, "ip arp print", "ping address=%s count=1"),
-    DLINK("$", "cat /proc/net/arp", "ping %s -c 1"),
-    ASUS("#", "cat /proc/net/arp", "ping %s -c 1 -W 3"),
-    OPENWRT(null, "cat /proc/net/arp", "ping %s -c 1"),
-    TPLINK(null, null, null);
+    KEENETIC("(config)>", "show ip arp", "tools ping %s count 1", null),
+    MICROTIC(null, "ip arp print", "ping address=%s count=1", Batch.MIKROTIK),
+    DLINK("$", "cat /proc/net/arp", "ping %s -c 1", Batch.SHELL),
+    ASUS("#", "cat /proc/net/arp", "ping %s -c 1 -W 3", Batch.SHELL),
+    OPENWRT(null, "cat /proc/net/arp", "ping %s -c 1", Batch.SHELL),
+    TPLINK(null, null, null, null);
 
     @Getter
     private final String invite;
@@ -18,13 +24,46 @@ public enum Brand {
 
     private final String ping;
 
-    Brand(String invite, String arp, String ping) {
+    private final String batchPing;
+
+    Brand(String invite, String arp, String ping, String batchPing) {
         this.invite = invite;
         this.arp = arp;
         this.ping = ping;
+        this.batchPing = batchPing;
     }
 
     public String getPing(@NonNull String ip) {
         return ping.formatted(ip);
     }
+
+    public boolean hasBatchPing() {
+        return nonNull(batchPing);
+    }
+
+    /**
+     * One command to ping all ips on router side, output of each ip is tagged by block markers
+     *
+     * @param ips ip of devices
+     * @return command
+     */
+    public String getBatchPing(@NonNull Collection<String> ips) {
+        return this == MICROTIC
+                ? batchPing.formatted(String.join(";", ips))
+                : batchPing.formatted(String.join(" ", ips), getPing("$ip"));
+    }
+
+    private static class Batch {
+        private static final String DONE_HEAD = PING_BATCH_DONE.substring(0, 4);
+        private static final String DONE_TAIL = PING_BATCH_DONE.substring(4);
+        // Ping in background subshells, each block is printed by one printf to keep it whole,
+        // done marker is split by quotes so echo of command never contains it
+        private static final String SHELL = "for ip in %s; do (r=$(%s 2>&1); printf '"
+                + PING_BLOCK_BEGIN + "%%s\\n%%s\\n" + PING_BLOCK_END + "\\n' \"$ip\" \"$r\") & done; wait; echo "
+                + DONE_HEAD + "''" + DONE_TAIL;
+        // RouterOS script has no background jobs, still one round trip for all devices
+        private static final String MIKROTIK = ":foreach i in={%s} do={:put (\"" + PING_BLOCK_BEGIN
+                + "\" . $i); :put (\"packet loss=\" . ((1 - [/ping $i count=1]) * 100) . \"%%\"); :put \""
+                + PING_BLOCK_END + "\"}; :put (\"" + DONE_HEAD + "\" . \"" + DONE_TAIL + "\")";
+    }
 }
@@ -0,0 +1,16 @@
+package ru.krsmon.bridge.model;
+
+/**
+ * Last known state of router device
+ *
+ * @param code      code of {@link DeviceStatus.Status}
+ * @param ip        IP of device, null if unknown
+ * @param checkedAt time of last survey, ms
+ * @param changedAt time of last change of code or IP, ms
+ */
+public record DeviceState(
+        int code,
+        String ip,
+        long checkedAt,
+        long changedAt) {
+}
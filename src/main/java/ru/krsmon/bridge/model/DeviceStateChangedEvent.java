@@ -0,0 +1,25 @@
+package ru.krsmon.bridge.model;
+
+import java.util.List;
+
+/**
+ * Devices of router changed status or IP since previous survey
+ */
+public record DeviceStateChangedEvent(
+        Brand brand,
+        Protocol protocol,
+        SurveyRequest request,
+        List<Change> changes) {
+
+    /**
+     * @param key      key of device
+     * @param previous previous state, null if device is new
+     * @param current  current state
+     */
+    public record Change(
+            String key,
+            DeviceState previous,
+            DeviceState current) {
+    }
+
+}
@@ -0,0 +1,11 @@
+package ru.krsmon.bridge.model;
+
+/**
+ * Survey of router is executed, response is fresh (not cached and not short-circuited by breaker)
+ */
+public record SurveyCompletedEvent(
+        Brand brand,
+        Protocol protocol,
+        SurveyRequest request,
+        SurveyResponse response) {
+}
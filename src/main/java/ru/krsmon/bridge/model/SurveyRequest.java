@@ -3,9 +3,13 @@ package ru.krsmon.bridge.model;
 import lombok.Getter;
 import lombok.Setter;
 import ru.krsmon.bridge.service.AbstractRouterClient;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 import java.util.Map;
 import java.util.Set;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Map.entry;
 import static java.util.stream.Collectors.toMap;
 import static java.util.stream.Collectors.toSet;
@@ -18,6 +22,7 @@ public class SurveyRequest {
     private int zabbixId;
     private String ip;
     private String name;
+    private String host;  // Technical name of zabbix host for trapper items, optional
     private String login;
     private String password;
     private int http;
@@ -35,6 +40,29 @@ public class SurveyRequest {
         return this.devices;
     }
 
+    public String routerKey() {
+        return "%s:%s".formatted(ip, service);
+    }
+
+    /**
+     * Key of router session: credentials are part of it, password as hash only
+     */
+    public String sessionKey() {
+        return "%s:%s:%s:%s".formatted(ip, service, login, passwordHash());
+    }
+
+    /**
+     * @return SHA-256 of password in hex, empty for request without password
+     */
+    public String passwordHash() {
+        if (password == null) return "";
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(password.getBytes(UTF_8)));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
     public Map<String, String> mac2key() {
         return devices.stream()
                 .filter(AbstractRouterClient::isNonDefaultDevice)
@@ -42,5 +70,4 @@ public class SurveyRequest {
                 .collect(toMap(Map.Entry::getKey, Map.Entry::getValue, (firstVal, secondVal) -> firstVal));
     }
 
-
 }
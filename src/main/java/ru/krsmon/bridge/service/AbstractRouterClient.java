@@ -5,18 +5,18 @@ import lombok.extern.slf4j.Slf4j;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.lang.NonNull;
 import ru.krsmon.bridge.model.*;
-import java.net.InetSocketAddress;
-import java.net.Socket;
+import ru.krsmon.bridge.service.PortScanner.ScanSession;
 import java.time.format.DateTimeFormatter;
-import java.util.HashSet;
+import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.CompletableFuture;
 
 import static java.time.LocalDateTime.now;
 import static java.util.Collections.emptyMap;
 import static java.util.stream.Collectors.toMap;
+import static java.util.stream.Collectors.toSet;
 import static ru.krsmon.bridge.external.zabbix.model.ZabbixConstrains.MACROS_LIP;
 import static ru.krsmon.bridge.model.DeviceStatus.Status.OFFLINE;
 import static ru.krsmon.bridge.model.DeviceStatus.Status.ONLINE;
@@ -35,7 +35,8 @@ public abstract class AbstractRouterClient implements RouterClient {
     protected static final String ROUTER_CHECK_SIMPLE = "Without connect, available ports: %s";
     protected static final String ROUTER_CHECK_FAIL = "Fail connect, available ports: %s";
     protected static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
-    protected final ScheduledExecutorService executorService = Executors.newScheduledThreadPool(10);
+    protected static final long SCAN_TIMEOUT = 6_000;
+    protected static final PortScanner portScanner = new PortScanner("port-scanner");
 
     static protected SurveyResponse completeResults(@NonNull Map<String, DeviceStatus> resultMap,
                                                     @NonNull StringBuilder errors,
@@ -73,30 +74,27 @@ public abstract class AbstractRouterClient implements RouterClient {
         return !"00:00:00:00:00:00".equalsIgnoreCase(device.getMac());
     }
 
-    @NotNull
-    static protected Set<Integer> scanPorts(@NonNull String host, @NonNull Set<Integer> ports) {
-        final Set<Integer> result = new HashSet<>();
-        for (var port : ports) {
-            try (var socket = new Socket()) {
-                socket.connect(new InetSocketAddress(host, port), 6_000);
-                if (socket.isConnected()) result.add(port);
-            } catch (Exception ignored) {
-            }
-        }
-        return result;
+    @NonNull
+    protected static Set<Integer> connectivityCheck(@NotNull SurveyRequest request,
+                                                    @NonNull ScanSession scanSession) throws RuntimeException {
+        final Set<Integer> openedPorts = scanSession.scan(request.getIp(), Set.of(request.getService())).join();
+        if (openedPorts.isEmpty()) throw new RuntimeException("Service port not available, run short scenery.");
+        return openedPorts;
     }
 
-    protected static void connectivityCheck(@NotNull SurveyRequest request) throws RuntimeException {
-        if (scanPorts(request.getIp(), Set.of(request.getService())).isEmpty())
-            throw new RuntimeException("Service port not available, run short scenery.");
+    @NonNull
+    public static SurveyResponse executeSurveyShort(@NonNull SurveyRequest request, boolean hasError) {
+        return executeSurveyShort(request, hasError, portScanner.newSession(SCAN_TIMEOUT));
     }
 
     @NonNull
-    public static SurveyResponse executeSurveyShort(@NonNull SurveyRequest request, boolean hasError) {
-        final Map<String, DeviceStatus> resultMap = request.devices().stream()
-                .filter(AbstractRouterClient::isNonDefaultDevice)
-                .map(device -> {
-                    final Set<Integer> openedPorts = scanPorts(request.getIp(), device.getPorts());
+    public static SurveyResponse executeSurveyShort(@NonNull SurveyRequest request, boolean hasError,
+                                                    @NonNull ScanSession scanSession) {
+        final Map<Device, CompletableFuture<Set<Integer>>> scans = scanDevices(request, scanSession);
+        final Map<String, DeviceStatus> resultMap = scans.entrySet().stream()
+                .map(scan -> {
+                    final Device device = scan.getKey();
+                    final Set<Integer> openedPorts = scan.getValue().join();
                     return ROUTER.equals(device.getType())
                             ? Map.entry(device.getKey(),
                             new DeviceStatus(openedPorts.isEmpty() ? OFFLINE.getCode() : ONLINE.getCode(),
@@ -114,14 +112,55 @@ public abstract class AbstractRouterClient implements RouterClient {
         return AbstractRouterClient.completeResults(resultMap, builder , emptyMap(), request.mac2key());
     }
 
+    /**
+     * Start port scans of all request devices at once, ports of devices are forwarded on router ip,
+     * devices are compared by identity because ip of device is updated from ARP during survey
+     *
+     * @param request     survey request
+     * @param scanSession scan session of survey
+     * @return futures of opened ports by device
+     */
+    @NonNull
+    protected static Map<Device, CompletableFuture<Set<Integer>>> scanDevices(@NonNull SurveyRequest request,
+                                                                              @NonNull ScanSession scanSession) {
+        final Map<Device, CompletableFuture<Set<Integer>>> scans = new IdentityHashMap<>();
+        request.devices().stream()
+                .filter(AbstractRouterClient::isNonDefaultDevice)
+                .forEach(device -> scans.put(device, scanSession.scan(request.getIp(), device.getPorts())));
+        return scans;
+    }
+
+    /**
+     * Ip of devices to ping, router and devices not found in ARP are skipped
+     *
+     * @param devices devices of survey
+     * @return ip of devices
+     */
+    @NonNull
+    protected static Set<String> pingTargets(@NonNull Collection<Device> devices) {
+        return devices.stream()
+                .filter(device -> !ROUTER.equals(device.getType()))
+                .map(Device::getIp)
+                .filter(ip -> !DEFAULT_IP.equalsIgnoreCase(ip))
+                .collect(toSet());
+    }
+
+    /**
+     * Schedule update of device IP macro when ARP shows device on another IP than zabbix knows,
+     * IP of request is current macro value, so update is requested again until zabbix has it
+     *
+     * @param device           checked device
+     * @param requestIp        IP of device from request (current macro value)
+     * @param arpMap           MAC->IP of router ARP table
+     * @param macrosNeedUpdate macros to update
+     */
     @SneakyThrows
-    protected void add2UpdateIfNeed(@NonNull Device device, @NonNull Map<String, String> arpMap,
+    protected void add2UpdateIfNeed(@NonNull Device device, String requestIp, @NonNull Map<String, String> arpMap,
                                     @NonNull Map<String, String> macrosNeedUpdate) {
-        if (arpMap.containsKey(device.getMac()) && !device.getIp().equalsIgnoreCase(arpMap.get(device.getMac()))) {
-            log.info("IP '%s' will change to '%s'".formatted(device.getIp(), arpMap.get(device.getMac())));
-            macrosNeedUpdate.put(
-                    MACROS_LIP.formatted(device.getKey().toUpperCase()),
-                    arpMap.get(device.getMac()));
+        final String arpIp = arpMap.get(device.getMac());
+        if (arpIp != null && !arpIp.equalsIgnoreCase(requestIp)) {
+            log.info("IP '%s' will change to '%s'".formatted(requestIp, arpIp));
+            macrosNeedUpdate.put(MACROS_LIP.formatted(device.getKey().toUpperCase()), arpIp);
         }
     }
 
@@ -0,0 +1,209 @@
+package ru.krsmon.bridge.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.lang.NonNull;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static java.lang.System.currentTimeMillis;
+import static java.util.stream.Collectors.toMap;
+import static java.util.stream.Collectors.toSet;
+
+/**
+ * Non-blocking TCP port scanner: every probe is a non-blocking connect registered on one shared selector,
+ * so all probes of a survey run at the same time and finish after one timeout at most.
+ * Host is resolved by caller, selector thread never waits for DNS. Stopped scanner completes probes with false.
+ */
+@Slf4j
+public class PortScanner {
+    private static final long SELECT_TICK = 100;
+    private final Queue<Probe> pending = new ConcurrentLinkedQueue<>();
+    private final Selector selector;
+    private volatile boolean running = true;
+
+    public PortScanner(@NonNull String name) {
+        try {
+            this.selector = Selector.open();
+        } catch (IOException ex) {
+            throw new IllegalStateException("Unable to open port scanner selector.", ex);
+        }
+        final Thread worker = new Thread(this::loop, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Stop scanner, probes in progress and new probes are completed with false
+     */
+    public void stop() {
+        running = false;
+        selector.wakeup();
+    }
+
+    /**
+     * Create scan session, probes of the same host and port are executed once per session
+     *
+     * @param timeout connect timeout in millis
+     * @return scan session
+     */
+    @NonNull
+    public ScanSession newSession(long timeout) {
+        return new ScanSession(timeout);
+    }
+
+    /**
+     * Probe tcp port
+     *
+     * @param host    host
+     * @param port    port
+     * @param timeout connect timeout in millis
+     * @return future, true if port is open
+     */
+    @NonNull
+    public CompletableFuture<Boolean> probe(@NonNull String host, int port, long timeout) {
+        final CompletableFuture<Boolean> future = new CompletableFuture<>();
+        final InetSocketAddress address = new InetSocketAddress(host, port);
+        if (address.isUnresolved() || !running) {
+            future.complete(false);
+            return future;
+        }
+        pending.add(new Probe(address, currentTimeMillis() + timeout, future));
+        selector.wakeup();
+        // Loop could exit between check and add, nobody else would complete probe
+        if (!running) failPending();
+        return future;
+    }
+
+    private void loop() {
+        try {
+            while (running) {
+                selector.select(SELECT_TICK);
+                registerPending();
+                for (var iterator = selector.selectedKeys().iterator(); iterator.hasNext(); ) {
+                    final SelectionKey key = iterator.next();
+                    iterator.remove();
+                    finish(key);
+                }
+                expire();
+            }
+        } catch (ClosedSelectorException ignored) {
+        } catch (Exception ex) {
+            log.error("SCAN: Port scanner stopped, message: '%s'".formatted(ex.getLocalizedMessage()));
+        } finally {
+            running = false;
+            failRegistered();
+            close(selector);
+            failPending();
+        }
+    }
+
+    private void failRegistered() {
+        try {
+            for (var key : selector.keys()) {
+                close(key.channel());
+                ((Probe) key.attachment()).future().complete(false);
+            }
+        } catch (ClosedSelectorException ignored) {
+        }
+    }
+
+    private void failPending() {
+        Probe probe;
+        while ((probe = pending.poll()) != null) probe.future().complete(false);
+    }
+
+    private void registerPending() {
+        Probe probe;
+        while ((probe = pending.poll()) != null) {
+            SocketChannel channel = null;
+            try {
+                channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                if (channel.connect(probe.address())) {
+                    channel.close();
+                    probe.future().complete(true);
+                } else {
+                    channel.register(selector, SelectionKey.OP_CONNECT, probe);
+                }
+            } catch (Exception ex) {
+                close(channel);
+                probe.future().complete(false);
+            }
+        }
+    }
+
+    private void finish(@NonNull SelectionKey key) {
+        final Probe probe = (Probe) key.attachment();
+        boolean isOpen;
+        try {
+            isOpen = key.isValid() && key.isConnectable() && ((SocketChannel) key.channel()).finishConnect();
+        } catch (Exception ex) {
+            isOpen = false;
+        }
+        key.cancel();
+        close(key.channel());
+        probe.future().complete(isOpen);
+    }
+
+    private void expire() {
+        final long now = currentTimeMillis();
+        for (var key : selector.keys()) {
+            final Probe probe = (Probe) key.attachment();
+            if (key.isValid() && probe.deadline() <= now) {
+                key.cancel();
+                close(key.channel());
+                probe.future().complete(false);
+            }
+        }
+    }
+
+    private static void close(Closeable closeable) {
+        try {
+            if (closeable != null) closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private record Probe(InetSocketAddress address, long deadline, CompletableFuture<Boolean> future) {
+    }
+
+    public class ScanSession {
+        private final Map<String, CompletableFuture<Boolean>> probes = new ConcurrentHashMap<>();
+        private final long timeout;
+
+        private ScanSession(long timeout) {
+            this.timeout = timeout;
+        }
+
+        /**
+         * Start scanning ports of host
+         *
+         * @param host  host
+         * @param ports ports
+         * @return future with opened ports
+         */
+        @NonNull
+        public CompletableFuture<Set<Integer>> scan(@NonNull String host, @NonNull Set<Integer> ports) {
+            final Map<Integer, CompletableFuture<Boolean>> futures = ports.stream()
+                    .collect(toMap(port -> port, port -> probes.computeIfAbsent(
+                            host + ":" + port, ignored -> probe(host, port, timeout))));
+            return CompletableFuture.allOf(futures.values().toArray(CompletableFuture[]::new))
+                    .thenApply(ignored -> futures.entrySet().stream()
+                            .filter(entry -> entry.getValue().join())
+                            .map(Map.Entry::getKey)
+                            .collect(toSet()));
+        }
+    }
+
+}
@@ -0,0 +1,39 @@
+package ru.krsmon.bridge.service;
+
+import org.springframework.lang.NonNull;
+import ru.krsmon.bridge.model.Brand;
+import ru.krsmon.bridge.model.Protocol;
+import ru.krsmon.bridge.model.SurveyRequest;
+import ru.krsmon.bridge.model.SurveyResponse;
+import ru.krsmon.bridge.service.pool.RouterWorkScheduler.Lane;
+import java.util.concurrent.CompletableFuture;
+
+public interface SurveyService {
+
+    /**
+     * Asynchronous survey of router in interactive lane
+     *
+     * @param brand    бренд роутера
+     * @param protocol протокол подключения
+     * @param request  креды точки и перечень оборудования
+     * @return future of survey results
+     */
+    @NonNull
+    default CompletableFuture<SurveyResponse> survey(@NonNull Brand brand, @NonNull Protocol protocol,
+                                                     @NonNull SurveyRequest request) {
+        return survey(brand, protocol, request, Lane.INTERACTIVE);
+    }
+
+    /**
+     * Asynchronous survey of router, bounded by global, per-router and per-brand limits of scheduler
+     *
+     * @param brand    бренд роутера
+     * @param protocol протокол подключения
+     * @param request  креды точки и перечень оборудования
+     * @param lane     lane of scheduler
+     * @return future of survey results
+     */
+    @NonNull
+    CompletableFuture<SurveyResponse> survey(@NonNull Brand brand, @NonNull Protocol protocol,
+                                             @NonNull SurveyRequest request, @NonNull Lane lane);
+}
@@ -0,0 +1,59 @@
+package ru.krsmon.bridge.service.cache;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static java.lang.System.currentTimeMillis;
+
+/**
+ * Last ARP table of each router, bounded by size with LRU eviction.
+ */
+@Component
+public class ArpCache {
+    protected final Map<String, Snapshot> snapshots;
+
+    @Value("${bridge.arp-cache.ttl}")
+    private Integer ttl;
+
+    public ArpCache(@Value("${bridge.arp-cache.max-size}") Integer maxSize) {
+        this.snapshots = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Snapshot> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Get ARP table of router if it is fresher than TTL
+     *
+     * @param routerKey key of router
+     * @return copy of MAC->IP map
+     */
+    @NonNull
+    public synchronized Optional<Map<String, String>> get(@NonNull String routerKey) {
+        final Snapshot snapshot = snapshots.get(routerKey);
+        return snapshot != null && currentTimeMillis() - snapshot.fetchedAt() < ttl * 1000L
+                ? Optional.of(new HashMap<>(snapshot.arp()))
+                : Optional.empty();
+    }
+
+    /**
+     * Save new ARP table of router
+     *
+     * @param routerKey key of router
+     * @param arp       MAC->IP map
+     */
+    public synchronized void update(@NonNull String routerKey, @NonNull Map<String, String> arp) {
+        snapshots.put(routerKey, new Snapshot(new HashMap<>(arp), currentTimeMillis()));
+    }
+
+    private record Snapshot(Map<String, String> arp, long fetchedAt) {
+    }
+
+}
@@ -0,0 +1,322 @@
+package ru.krsmon.bridge.service.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import ru.krsmon.bridge.model.Device;
+import ru.krsmon.bridge.model.DeviceState;
+import ru.krsmon.bridge.model.DeviceStateChangedEvent;
+import ru.krsmon.bridge.model.DeviceStateChangedEvent.Change;
+import ru.krsmon.bridge.model.DeviceStatus;
+import ru.krsmon.bridge.model.SurveyCompletedEvent;
+import ru.krsmon.bridge.model.SurveyRequest;
+import ru.krsmon.bridge.model.SurveyResponse;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.zip.CRC32;
+
+import static java.lang.System.currentTimeMillis;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Last known state of router devices. State is kept in memory and in memory-mapped append-only journal,
+ * only changes are appended, compaction rewrites journal from memory and journal is replayed on start,
+ * so changes of devices are detected against state surveyed before restart.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DeviceStateStore {
+    protected static final int HEADER_SIZE = 8;  // Length and CRC32 of record
+    protected static final long MB = 1024 * 1024;
+    protected final ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
+    protected final Map<String, Map<String, DeviceState>> states = new HashMap<>();
+    protected final ApplicationEventPublisher eventPublisher;
+    protected final MeterRegistry registry;
+    protected MappedByteBuffer journal;
+    protected boolean isDirty;
+    protected boolean isCompactionQueued;
+    protected List<byte[]> compactionTail;  // Records appended while compaction writes snapshot
+    protected Counter changes;
+
+    @Value("${bridge.state.file}")
+    private String file;
+
+    @Value("${bridge.state.capacity}")
+    private Integer capacity;
+
+    @Value("${bridge.state.compact-interval}")
+    private Integer compactInterval;
+
+    @Value("${bridge.state.retention}")
+    private Integer retention;
+
+    @PostConstruct
+    public void start() {
+        final long startedAt = currentTimeMillis();
+        try {
+            final Path path = Path.of(file);
+            journal = map(path, Math.max(capacity * MB, Files.exists(path) ? Files.size(path) : 0));
+            final int records = replay();
+            log.info("STATE: Loaded '%s' records of '%s' routers from '%s' in '%s' ms."
+                    .formatted(records, states.size(), file, currentTimeMillis() - startedAt));
+        } catch (Exception ex) {
+            // Bridge works without persistence, state is learned again from surveys
+            journal = null;
+            log.warn("STATE: Fail to open '%s', state is kept in memory only, message: '%s'"
+                    .formatted(file, ex.getLocalizedMessage()));
+        }
+
+        Gauge.builder("state.devices", this, DeviceStateStore::countDevices)
+                .description("Devices with known state.")
+                .register(registry);
+        Gauge.builder("state.journal.bytes", this, DeviceStateStore::journalSize)
+                .description("Used bytes of device state journal.")
+                .register(registry);
+        changes = Counter.builder("state.changes")
+                .description("Changes of device status or IP.")
+                .register(registry);
+        executorService.scheduleWithFixedDelay(this::compact, compactInterval, compactInterval, SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        executorService.shutdown();
+        // Compaction in progress is completed, changes made after it are compacted at last
+        executorService.awaitTermination(compactInterval, SECONDS);
+        compact();
+    }
+
+    /**
+     * Update state of router devices, changes are appended to journal and published
+     */
+    @EventListener
+    public void onSurveyCompleted(@NonNull SurveyCompletedEvent event) {
+        final SurveyRequest request = event.request();
+        final SurveyResponse response = event.response();
+        if (response.getResult() == null || request.getDevices() == null) return;
+
+        final long now = currentTimeMillis();
+        final Map<String, String> discovery = response.getDiscovery() == null ? Map.of() : response.getDiscovery();
+        final List<Change> changed = new ArrayList<>();
+        synchronized (this) {
+            isDirty = true;
+            final Map<String, DeviceState> router = states.computeIfAbsent(request.routerKey(), ignored -> new HashMap<>());
+            // OFFLINE response has placeholders of all device keys, only devices of router are stored
+            for (Device device : request.devices()) {
+                final DeviceStatus status = response.getResult().get(device.getKey());
+                if (status == null) continue;
+                final String ip = discovery.getOrDefault(device.getKey(), device.getIp());
+                final DeviceState previous = router.get(device.getKey());
+                final boolean isChanged = previous == null
+                        || previous.code() != status.code()
+                        || !Objects.equals(previous.ip(), ip);
+                final DeviceState current = new DeviceState(status.code(), ip, now, isChanged ? now : previous.changedAt());
+                router.put(device.getKey(), current);
+                if (isChanged) {
+                    append(request.routerKey(), device.getKey(), current);
+                    changed.add(new Change(device.getKey(), previous, current));
+                }
+            }
+        }
+
+        if (changed.isEmpty()) return;
+        changes.increment(changed.size());
+        eventPublisher.publishEvent(new DeviceStateChangedEvent(event.brand(), event.protocol(), request, changed));
+    }
+
+    /**
+     * Append record under lock of store, full journal is compacted in background
+     */
+    private void append(@NonNull String routerKey, @NonNull String key, @NonNull DeviceState state) {
+        if (journal == null) return;
+        final byte[] record = encode(routerKey, key, state);
+        if (compactionTail != null) compactionTail.add(record);
+        if (journal.remaining() >= HEADER_SIZE + record.length) {
+            write(journal, record);
+        } else if (compactionTail == null && !isCompactionQueued && !executorService.isShutdown()) {
+            // State is already in memory, compacted journal contains it
+            isCompactionQueued = true;
+            executorService.execute(this::compact);
+        }
+    }
+
+    /**
+     * Rewrite journal from memory into new file, routers not checked during retention are dropped.
+     * Snapshot is taken under lock, file is written outside of it, so surveys never wait for disk
+     */
+    private void compact() {
+        final long startedAt = currentTimeMillis();
+        final List<byte[]> records = new ArrayList<>();
+        synchronized (this) {
+            isCompactionQueued = false;
+            if (journal == null || !isDirty || compactionTail != null) return;
+            states.values().removeIf(router -> router.values().stream()
+                    .allMatch(state -> startedAt - state.checkedAt() > retention * 1000L));
+            states.forEach((routerKey, router) -> router.forEach((key, state) -> records.add(encode(routerKey, key, state))));
+            isDirty = false;
+            compactionTail = new ArrayList<>();
+        }
+
+        final long live = records.stream().mapToLong(record -> HEADER_SIZE + record.length).sum();
+        final Path path = Path.of(file);
+        final Path temp = Path.of(file + ".tmp");
+        MappedByteBuffer compacted = null;
+        try {
+            Files.deleteIfExists(temp);
+            // Half of journal is kept free for appends till next compaction
+            compacted = map(temp, Math.max(capacity * MB, live * 2));
+            for (byte[] record : records) write(compacted, record);
+            compacted.force();
+        } catch (Exception ex) {
+            compacted = null;
+            log.warn("STATE: Fail to compact '%s', message: '%s'".formatted(file, ex.getLocalizedMessage()));
+        }
+
+        synchronized (this) {
+            final List<byte[]> tail = compactionTail;
+            compactionTail = null;
+            if (compacted == null) {
+                isDirty = true;
+                return;
+            }
+            // Changes made during compaction are in memory and in old journal, new journal gets them too
+            for (byte[] record : tail) {
+                if (compacted.remaining() < HEADER_SIZE + record.length) {
+                    isDirty = true;
+                    break;
+                }
+                write(compacted, record);
+            }
+            // Mapping follows file on move, appends from now on go to new journal
+            journal = compacted;
+        }
+
+        try {
+            Files.move(temp, path, ATOMIC_MOVE, REPLACE_EXISTING);
+        } catch (IOException ex) {
+            synchronized (this) {
+                isDirty = true;
+            }
+            log.warn("STATE: Fail to replace '%s', message: '%s'".formatted(file, ex.getLocalizedMessage()));
+            return;
+        }
+        log.info("STATE: Compacted '%s' records into '%s' bytes in '%s' ms."
+                .formatted(records.size(), live, currentTimeMillis() - startedAt));
+    }
+
+    private int replay() {
+        int records = 0;
+        while (journal.remaining() >= HEADER_SIZE) {
+            final int start = journal.position();
+            final int length = journal.getInt();
+            final int crc = journal.getInt();
+            if (length <= 0 || length > journal.remaining()) {
+                journal.position(start);
+                break;
+            }
+            final ByteBuffer record = journal.slice(journal.position(), length);
+            if (crc != checksum(record.duplicate())) {
+                // Torn tail of crashed write, it is overwritten by next append
+                log.warn("STATE: Journal '%s' is broken at '%s', tail is dropped.".formatted(file, start));
+                journal.position(start);
+                break;
+            }
+            decode(record);
+            journal.position(journal.position() + length);
+            records++;
+        }
+        return records;
+    }
+
+    private void decode(@NonNull ByteBuffer record) {
+        final String routerKey = getString(record);
+        final String key = getString(record);
+        final DeviceState state = new DeviceState(record.getInt(), getString(record), record.getLong(), record.getLong());
+        states.computeIfAbsent(routerKey, ignored -> new HashMap<>()).put(key, state);
+    }
+
+    @NonNull
+    private static byte[] encode(@NonNull String routerKey, @NonNull String key, @NonNull DeviceState state) {
+        final byte[] router = routerKey.getBytes(UTF_8);
+        final byte[] device = key.getBytes(UTF_8);
+        final byte[] ip = state.ip() == null ? null : state.ip().getBytes(UTF_8);
+        final ByteBuffer record = ByteBuffer.allocate(3 * Short.BYTES + router.length + device.length
+                + (ip == null ? 0 : ip.length) + Integer.BYTES + 2 * Long.BYTES);
+        putString(record, router);
+        putString(record, device);
+        record.putInt(state.code());
+        putString(record, ip);
+        record.putLong(state.checkedAt());
+        record.putLong(state.changedAt());
+        return record.array();
+    }
+
+    private static void write(@NonNull ByteBuffer journal, @NonNull byte[] record) {
+        journal.putInt(record.length);
+        journal.putInt(checksum(ByteBuffer.wrap(record)));
+        journal.put(record);
+    }
+
+    private static void putString(@NonNull ByteBuffer buffer, byte[] value) {
+        buffer.putShort((short) (value == null ? -1 : value.length));
+        if (value != null) buffer.put(value);
+    }
+
+    private static String getString(@NonNull ByteBuffer buffer) {
+        final short length = buffer.getShort();
+        if (length < 0) return null;
+        final byte[] value = new byte[length];
+        buffer.get(value);
+        return new String(value, UTF_8);
+    }
+
+    private static int checksum(@NonNull ByteBuffer record) {
+        final CRC32 crc = new CRC32();
+        crc.update(record);
+        return (int) crc.getValue();
+    }
+
+    @NonNull
+    private static MappedByteBuffer map(@NonNull Path path, long size) throws IOException {
+        if (size > Integer.MAX_VALUE) throw new IOException("Journal exceeds '%s' bytes.".formatted(Integer.MAX_VALUE));
+        try (FileChannel channel = FileChannel.open(path, CREATE, READ, WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    private synchronized int countDevices() {
+        return states.values().stream().mapToInt(Map::size).sum();
+    }
+
+    private synchronized int journalSize() {
+        return journal == null ? 0 : journal.position();
+    }
+
+}
@@ -0,0 +1,145 @@
+package ru.krsmon.bridge.service.cache;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import ru.krsmon.bridge.external.zabbix.service.ZabbixService;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static java.lang.System.currentTimeMillis;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Zabbix host name->ID cache, misses are cached too, lookup errors are not, all hosts are prefetched on start
+ * and on schedule, misses between prefetches are looked up in batches.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class HostIdCache {
+    protected final ScheduledExecutorService executorService = Executors.newScheduledThreadPool(2);
+    protected final Map<String, CompletableFuture<Integer>> lookups = new ConcurrentHashMap<>();
+    protected final Set<String> pending = new LinkedHashSet<>();
+    protected final ZabbixService zabbixService;
+    protected Map<String, Entry> hostIds;
+
+    @Value("${bridge.host-id-cache.ttl}")
+    private Integer ttl;
+
+    @Value("${bridge.host-id-cache.negative-ttl}")
+    private Integer negativeTtl;
+
+    @Value("${bridge.host-id-cache.max-size}")
+    private Integer maxSize;
+
+    @Value("${bridge.host-id-cache.prefetch-interval}")
+    private Integer prefetchInterval;
+
+    @Value("${bridge.host-id-cache.batch-delay}")
+    private Integer batchDelay;
+
+    @PostConstruct
+    public void init() {
+        hostIds = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+        executorService.scheduleWithFixedDelay(this::prefetch, 0, prefetchInterval, SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executorService.shutdownNow();
+    }
+
+    /**
+     * Resolve zabbix host ID by name, cached value is returned at once, otherwise lookup is started in background
+     *
+     * @param hostName имя хоста
+     * @return future of host ID, 0 if host not found, completed exceptionally if zabbix is unavailable
+     */
+    @NonNull
+    public CompletableFuture<Integer> resolve(@NonNull String hostName) {
+        final Entry entry = get(hostName);
+        if (entry != null) return CompletableFuture.completedFuture(entry.hostId());
+
+        // Concurrent surveys of the same router share one lookup
+        final CompletableFuture<Integer> created = new CompletableFuture<>();
+        final CompletableFuture<Integer> lookup = lookups.putIfAbsent(hostName, created);
+        if (lookup != null) return lookup;
+        synchronized (pending) {
+            // Misses during batch delay are requested together
+            if (pending.isEmpty()) executorService.schedule(this::lookup, batchDelay, MILLISECONDS);
+            pending.add(hostName);
+        }
+        return created;
+    }
+
+    private void lookup() {
+        final List<String> hostNames;
+        synchronized (pending) {
+            hostNames = new ArrayList<>(pending);
+            pending.clear();
+        }
+        try {
+            final Map<String, Integer> found = zabbixService.getHostIds(hostNames);
+            for (String hostName : hostNames) {
+                final int hostId = found.getOrDefault(hostName, 0);
+                put(hostName, hostId);
+                final CompletableFuture<Integer> lookup = lookups.remove(hostName);
+                if (lookup != null) lookup.complete(hostId);
+            }
+        } catch (Exception ex) {
+            // Failed lookup is not cached, unavailable zabbix is not the same as missing host
+            for (String hostName : hostNames) {
+                final CompletableFuture<Integer> lookup = lookups.remove(hostName);
+                if (lookup != null) lookup.completeExceptionally(ex);
+            }
+        }
+    }
+
+    private void prefetch() {
+        try {
+            final Optional<Map<String, Integer>> allHostIds = zabbixService.getAllHostIds();
+            if (allHostIds.isEmpty()) {
+                // Cached IDs stay till their TTL, misses are looked up one by one meanwhile
+                log.warn("ZABBIX: Fail to prefetch host ids, cached ids are kept.");
+                return;
+            }
+            allHostIds.get().forEach(this::put);
+            log.info("ZABBIX: Prefetched ID of '%s' hosts.".formatted(allHostIds.get().size()));
+        } catch (Exception ex) {
+            log.warn("ZABBIX: Fail to prefetch host ids, message: '%s'".formatted(ex.getLocalizedMessage()));
+        }
+    }
+
+    private synchronized Entry get(@NonNull String hostName) {
+        final Entry entry = hostIds.get(hostName);
+        return entry != null && entry.expiresAt() > currentTimeMillis() ? entry : null;
+    }
+
+    private synchronized void put(@NonNull String hostName, int hostId) {
+        hostIds.put(hostName, new Entry(hostId, currentTimeMillis() + (hostId == 0 ? negativeTtl : ttl) * 1000L));
+    }
+
+    private record Entry(int hostId, long expiresAt) {
+    }
+
+}
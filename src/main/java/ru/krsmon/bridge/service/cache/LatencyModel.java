@@ -0,0 +1,151 @@
+package ru.krsmon.bridge.service.cache;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import ru.krsmon.bridge.service.metrics.SurveyMetrics.PhaseCall;
+import javax.annotation.PostConstruct;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.lang.System.nanoTime;
+
+/**
+ * Learned latency of each router: smoothed RTT and its deviation per operation (RFC 6298 style),
+ * timeout is derived from them within floor/ceiling, router without samples gets ceiling.
+ */
+@Component
+public class LatencyModel {
+    private static final double ALPHA = 0.125;
+    private static final double BETA = 0.25;
+    private static final int MAX_BACKOFF = 8;
+    protected final Map<Kind, Bounds> bounds = new EnumMap<>(Kind.class);
+    protected Map<String, Estimate[]> estimates;
+
+    @Value("${bridge.latency.max-routers}")
+    private Integer maxRouters;
+
+    @Value("${bridge.latency.deviation-factor}")
+    private Integer deviationFactor;
+
+    @Value("${bridge.latency.connect.floor}")
+    private Long connectFloor;
+
+    @Value("${bridge.latency.connect.ceiling}")
+    private Long connectCeiling;
+
+    @Value("${bridge.latency.auth.floor}")
+    private Long authFloor;
+
+    @Value("${bridge.latency.auth.ceiling}")
+    private Long authCeiling;
+
+    @Value("${bridge.latency.command.floor}")
+    private Long commandFloor;
+
+    @Value("${bridge.latency.command.ceiling}")
+    private Long commandCeiling;
+
+    @Value("${bridge.latency.probe.floor}")
+    private Long probeFloor;
+
+    @Value("${bridge.latency.probe.ceiling}")
+    private Long probeCeiling;
+
+    @PostConstruct
+    public void init() {
+        bounds.put(Kind.CONNECT, new Bounds(connectFloor, connectCeiling));
+        bounds.put(Kind.AUTH, new Bounds(authFloor, authCeiling));
+        bounds.put(Kind.COMMAND, new Bounds(commandFloor, commandCeiling));
+        bounds.put(Kind.PROBE, new Bounds(probeFloor, probeCeiling));
+        estimates = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Estimate[]> eldest) {
+                return size() > maxRouters;
+            }
+        };
+    }
+
+    /**
+     * Timeout of operation on router
+     *
+     * @param routerKey key of router
+     * @param kind      operation
+     * @return timeout in millis
+     */
+    public synchronized long timeout(@NonNull String routerKey, @NonNull Kind kind) {
+        final Bounds limits = bounds.get(kind);
+        final Estimate[] routerEstimates = estimates.get(routerKey);
+        final Estimate estimate = routerEstimates == null ? null : routerEstimates[kind.ordinal()];
+        if (estimate == null) return limits.ceiling();
+        final double timeout = (estimate.srtt + deviationFactor * estimate.rttvar) * estimate.backoff;
+        return Math.max(limits.floor(), Math.min(limits.ceiling(), (long) Math.ceil(timeout)));
+    }
+
+    /**
+     * @return timeout of operation which latency is not learned, e.g. ping of device
+     */
+    public long ceiling(@NonNull Kind kind) {
+        return bounds.get(kind).ceiling();
+    }
+
+    /**
+     * Time operation, duration of success is learned, failure backs off timeout
+     */
+    public <T, E extends Exception> T measure(@NonNull String routerKey, @NonNull Kind kind,
+                                              @NonNull PhaseCall<T, E> call) throws E {
+        final long start = nanoTime();
+        try {
+            final T result = call.call();
+            sample(routerKey, kind, (nanoTime() - start) / 1_000_000);
+            return result;
+        } catch (Exception ex) {
+            timedOut(routerKey, kind);
+            throw ex;
+        }
+    }
+
+    public synchronized void sample(@NonNull String routerKey, @NonNull Kind kind, long millis) {
+        final Estimate[] routerEstimates = estimates.computeIfAbsent(routerKey, ignored -> new Estimate[Kind.values().length]);
+        final Estimate estimate = routerEstimates[kind.ordinal()];
+        if (estimate == null) {
+            routerEstimates[kind.ordinal()] = new Estimate(millis, millis / 2.0);
+            return;
+        }
+        estimate.rttvar = (1 - BETA) * estimate.rttvar + BETA * Math.abs(estimate.srtt - millis);
+        estimate.srtt = (1 - ALPHA) * estimate.srtt + ALPHA * millis;
+        estimate.backoff = 1;
+    }
+
+    /**
+     * Operation failed or timed out, timeout is doubled until next success
+     */
+    public synchronized void timedOut(@NonNull String routerKey, @NonNull Kind kind) {
+        final Estimate[] routerEstimates = estimates.get(routerKey);
+        final Estimate estimate = routerEstimates == null ? null : routerEstimates[kind.ordinal()];
+        if (estimate != null) estimate.backoff = Math.min(estimate.backoff * 2, MAX_BACKOFF);
+    }
+
+    public enum Kind {
+        CONNECT,
+        AUTH,
+        COMMAND,
+        PROBE
+    }
+
+    protected record Bounds(long floor, long ceiling) {
+    }
+
+    protected static class Estimate {
+        private double srtt;
+        private double rttvar;
+        private int backoff = 1;
+
+        private Estimate(double srtt, double rttvar) {
+            this.srtt = srtt;
+            this.rttvar = rttvar;
+        }
+    }
+
+}
@@ -0,0 +1,165 @@
+package ru.krsmon.bridge.service.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import ru.krsmon.bridge.model.Device;
+import ru.krsmon.bridge.model.DeviceStatus;
+import ru.krsmon.bridge.model.SurveyRequest;
+import ru.krsmon.bridge.model.SurveyResponse;
+import javax.annotation.PostConstruct;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+import static java.lang.System.currentTimeMillis;
+import static java.time.LocalDateTime.now;
+import static java.util.stream.Collectors.toMap;
+import static ru.krsmon.bridge.model.DeviceStatus.Status.OFFLINE;
+import static ru.krsmon.bridge.model.SurveyResponse.errorResult;
+
+/**
+ * Circuit breaker of each router: after consecutive OFFLINE or failed surveys the router is answered by OFFLINE
+ * response without network, one half-open survey per open period checks if router is back.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RouterCircuitBreaker {
+    protected static final int HOST_OFFLINE = 503;
+    protected static final String BREAKER_OPEN = "Router offline, survey skipped, last check: %s";
+    protected static final DateTimeFormatter formatter = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss");
+    protected final MeterRegistry registry;
+    protected Map<String, Breaker> breakers;
+    protected Counter shortCircuited;
+
+    @Value("${bridge.breaker.failure-threshold}")
+    private Integer failureThreshold;
+
+    @Value("${bridge.breaker.open-duration}")
+    private Integer openDuration;
+
+    @Value("${bridge.breaker.max-open-duration}")
+    private Integer maxOpenDuration;
+
+    @Value("${bridge.breaker.max-routers}")
+    private Integer maxRouters;
+
+    @PostConstruct
+    public void init() {
+        breakers = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Breaker> eldest) {
+                return size() > maxRouters;
+            }
+        };
+        for (State state : new State[]{State.OPEN, State.HALF_OPEN}) {
+            Gauge.builder("survey.breaker.routers", this, breaker -> breaker.count(state))
+                    .description("Routers by circuit breaker state.")
+                    .tag("state", state.name().toLowerCase(Locale.ROOT))
+                    .register(registry);
+        }
+        shortCircuited = Counter.builder("survey.breaker.short.circuited")
+                .description("Surveys answered by OFFLINE response of open breaker.")
+                .register(registry);
+    }
+
+    /**
+     * Check breaker before survey, open breaker past its period lets one half-open survey through
+     *
+     * @param request survey request
+     * @return OFFLINE response of request devices if survey must be skipped
+     */
+    @NonNull
+    public synchronized Optional<SurveyResponse> reject(@NonNull SurveyRequest request) {
+        final String routerKey = request.routerKey();
+        final Breaker breaker = breakers.get(routerKey);
+        if (breaker == null || breaker.state == State.CLOSED) return Optional.empty();
+        if (breaker.state == State.OPEN && currentTimeMillis() - breaker.openedAt >= breaker.openFor * 1000L) {
+            breaker.state = State.HALF_OPEN;
+            log.info("SURVEY: Breaker of '%s' is half-open, probe router.".formatted(routerKey));
+            return Optional.empty();
+        }
+        shortCircuited.increment();
+        return Optional.of(offline(request, breaker));
+    }
+
+    /**
+     * OFFLINE response is built for devices of request, other request of the same router may have other devices
+     */
+    @NonNull
+    private static SurveyResponse offline(@NonNull SurveyRequest request, @NonNull Breaker breaker) {
+        final DeviceStatus status = new DeviceStatus(OFFLINE.getCode(), BREAKER_OPEN.formatted(breaker.checkedAt));
+        final Map<String, DeviceStatus> resultMap = request.devices().stream()
+                .collect(toMap(Device::getKey, device -> status, (firstVal, secondVal) -> firstVal));
+        return SurveyResponse.builder()
+                .code(HOST_OFFLINE)
+                .message("HOST OFFLINE")
+                .result(errorResult(OFFLINE, resultMap))
+                .discovery(Map.of())
+                .checkedAt(breaker.checkedAt)
+                .build();
+    }
+
+    /**
+     * Record result of survey, OFFLINE response or error is failure
+     *
+     * @param routerKey key of router
+     * @param response  response of survey, null if survey failed with error
+     */
+    public synchronized void record(@NonNull String routerKey, SurveyResponse response) {
+        final boolean isFailure = response == null || response.getCode() == HOST_OFFLINE;
+        Breaker breaker = breakers.get(routerKey);
+        if (!isFailure) {
+            if (breaker != null && breaker.state != State.CLOSED)
+                log.info("SURVEY: Breaker of '%s' is closed, router is back.".formatted(routerKey));
+            breakers.remove(routerKey);
+            return;
+        }
+
+        if (breaker == null) breakers.put(routerKey, breaker = new Breaker());
+        breaker.checkedAt = response != null && response.getCheckedAt() != null
+                ? response.getCheckedAt()
+                : formatter.format(now());
+        breaker.failures++;
+        if (breaker.state == State.HALF_OPEN) {
+            // Router is still down, wait longer before next probe
+            open(routerKey, breaker, Math.min(breaker.openFor * 2, maxOpenDuration));
+        } else if (breaker.state == State.CLOSED && breaker.failures >= failureThreshold) {
+            open(routerKey, breaker, openDuration);
+        }
+    }
+
+    private void open(@NonNull String routerKey, @NonNull Breaker breaker, int openFor) {
+        breaker.state = State.OPEN;
+        breaker.openedAt = currentTimeMillis();
+        breaker.openFor = openFor;
+        log.warn("SURVEY: Breaker of '%s' is open for '%s' sec.".formatted(routerKey, openFor));
+    }
+
+    private synchronized int count(@NonNull State state) {
+        return (int) breakers.values().stream().filter(breaker -> breaker.state == state).count();
+    }
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    protected static class Breaker {
+        private State state = State.CLOSED;
+        private int failures;
+        private long openedAt;
+        private int openFor;
+        private String checkedAt;
+    }
+
+}
@@ -0,0 +1,117 @@
+package ru.krsmon.bridge.service.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import ru.krsmon.bridge.model.SurveyResponse;
+import javax.annotation.PostConstruct;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+import static java.lang.System.currentTimeMillis;
+
+/**
+ * Single-flight of identical surveys, concurrent callers share one execution and its result is kept for short TTL.
+ */
+@Component
+@RequiredArgsConstructor
+public class SurveyResultCache {
+    protected final Map<String, CompletableFuture<SurveyResponse>> inFlight = new ConcurrentHashMap<>();
+    protected final MeterRegistry registry;
+    protected Map<String, Entry> results;
+    protected Counter hits;
+    protected Counter coalesced;
+
+    @Value("${bridge.survey.result-ttl}")
+    private Integer ttl;
+
+    @Value("${bridge.survey.result-max-size}")
+    private Integer maxSize;
+
+    @PostConstruct
+    public void init() {
+        results = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+        hits = Counter.builder("survey.cache.hits")
+                .description("Surveys answered by recent result.")
+                .register(registry);
+        coalesced = Counter.builder("survey.cache.coalesced")
+                .description("Surveys joined to identical survey in flight.")
+                .register(registry);
+    }
+
+    /**
+     * Get recent result of survey, join identical survey in flight or start new one
+     *
+     * @param key    key of survey, equal keys mean identical surveys
+     * @param survey starts survey execution
+     * @return future of survey response, it is shared between identical surveys
+     */
+    @NonNull
+    public CompletableFuture<SurveyResponse> get(@NonNull String key,
+                                                 @NonNull Supplier<CompletableFuture<SurveyResponse>> survey) {
+        SurveyResponse cached = getRecent(key);
+        if (cached != null) {
+            hits.increment();
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        final CompletableFuture<SurveyResponse> created = new CompletableFuture<>();
+        final CompletableFuture<SurveyResponse> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            coalesced.increment();
+            return existing;
+        }
+
+        // Identical survey may finish between cache check and registration
+        cached = getRecent(key);
+        if (cached != null) {
+            inFlight.remove(key, created);
+            created.complete(cached);
+            hits.increment();
+            return created;
+        }
+
+        try {
+            survey.get().whenComplete((response, ex) -> complete(key, created, response, ex));
+        } catch (RuntimeException ex) {
+            complete(key, created, null, ex);
+        }
+        return created;
+    }
+
+    private void complete(@NonNull String key, @NonNull CompletableFuture<SurveyResponse> future,
+                          SurveyResponse response, Throwable ex) {
+        // Result is cached before survey leaves flight, so no caller misses both
+        if (ex == null) put(key, response);
+        inFlight.remove(key, future);
+        if (ex == null) future.complete(response);
+        else future.completeExceptionally(ex);
+    }
+
+    private synchronized SurveyResponse getRecent(@NonNull String key) {
+        final Entry entry = results.get(key);
+        if (entry == null) return null;
+        if (currentTimeMillis() - entry.completedAt() < ttl * 1000L) return entry.response();
+        results.remove(key);
+        return null;
+    }
+
+    private synchronized void put(@NonNull String key, @NonNull SurveyResponse response) {
+        if (ttl > 0) results.put(key, new Entry(response, currentTimeMillis()));
+    }
+
+    private record Entry(SurveyResponse response, long completedAt) {
+    }
+
+}
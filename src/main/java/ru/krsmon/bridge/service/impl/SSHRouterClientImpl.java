@@ -2,30 +2,60 @@ package ru.krsmon.bridge.service.impl;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.sshd.client.channel.ChannelExec;
+import org.apache.sshd.client.channel.ClientChannelEvent;
 import org.apache.sshd.client.session.ClientSession;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.lang.NonNull;
 import org.springframework.stereotype.Service;
+import ru.krsmon.bridge.external.zabbix.MacroUpdateQueue;
 import ru.krsmon.bridge.external.zabbix.service.ZabbixService;
 import ru.krsmon.bridge.model.*;
 import ru.krsmon.bridge.service.AbstractRouterClient;
+import ru.krsmon.bridge.service.PortScanner.ScanSession;
+import ru.krsmon.bridge.service.cache.ArpCache;
+import ru.krsmon.bridge.service.cache.HostIdCache;
+import ru.krsmon.bridge.service.cache.LatencyModel;
+import ru.krsmon.bridge.service.metrics.SurveyMetrics;
+import ru.krsmon.bridge.service.pool.SshSessionPool;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
 
 import static java.lang.String.valueOf;
 import static java.lang.System.err;
 import static java.nio.charset.StandardCharsets.UTF_8;
-import static java.util.concurrent.TimeUnit.SECONDS;
-import static java.util.stream.Collectors.toMap;
-import static org.apache.sshd.client.SshClient.setUpDefaultSimpleClient;
+import static java.util.stream.Collectors.toSet;
+import static org.apache.sshd.client.session.ClientSession.REMOTE_COMMAND_WAIT_EVENTS;
 import static ru.krsmon.bridge.external.zabbix.model.ZabbixConstrains.MACRO_ROUTER_ID;
 import static ru.krsmon.bridge.model.DeviceStatus.Status.OFFLINE;
 import static ru.krsmon.bridge.model.DeviceStatus.Status.ONLINE;
 import static ru.krsmon.bridge.model.DeviceType.ROUTER;
 import static ru.krsmon.bridge.model.Policy.PING_OR_PORTS;
 import static ru.krsmon.bridge.model.Policy.PORT_ONLY;
+import static ru.krsmon.bridge.model.Protocol.SSH;
+import static ru.krsmon.bridge.service.cache.LatencyModel.Kind.COMMAND;
+import static ru.krsmon.bridge.service.cache.LatencyModel.Kind.PROBE;
+import static ru.krsmon.bridge.service.metrics.SurveyMetrics.Phase.ARP;
+import static ru.krsmon.bridge.service.metrics.SurveyMetrics.Phase.PING;
+import static ru.krsmon.bridge.service.metrics.SurveyMetrics.Phase.SCAN;
+import static ru.krsmon.bridge.service.metrics.SurveyMetrics.Phase.ZABBIX;
 import static ru.krsmon.bridge.utils.RegexUtils.*;
 
 @Slf4j
@@ -33,68 +63,149 @@ import static ru.krsmon.bridge.utils.RegexUtils.*;
 @RequiredArgsConstructor
 public class SSHRouterClientImpl extends AbstractRouterClient {
     protected final ZabbixService zabbixService;
+    protected final MacroUpdateQueue macroUpdateQueue;
+    protected final ArpCache arpCache;
+    protected final HostIdCache hostIdCache;
+    protected final SurveyMetrics metrics;
+    protected final LatencyModel latency;
+    protected final SshSessionPool sessionPool;
+    protected ExecutorService channelExecutor;
 
-    @Value("${server.tomcat.connection-timeout}")
-    private Integer timeout;
+    @Value("${bridge.ssh.max-channels}")
+    private Integer maxChannels;
+
+    @Value("${bridge.ssh.channel-threads}")
+    private Integer channelThreads;
+
+    @PostConstruct
+    public void init() {
+        channelExecutor = Executors.newFixedThreadPool(channelThreads);
+    }
+
+    @PreDestroy
+    public void stop() {
+        channelExecutor.shutdown();
+    }
 
     @NonNull
     @Override
     public SurveyResponse executeFullSurvey(@NonNull SurveyRequest request, @NonNull Brand brand) {
-        try (var client = setUpDefaultSimpleClient()) {
-            connectivityCheck(request);
-            client.setConnectTimeout(timeout * 1000);
-            client.setAuthenticationTimeout(timeout * 100);
-
-            final ClientSession session = client.sessionLogin(request.getIp(), request.getService(), request.getLogin(), request.getPassword());
-            if (session.isAuthenticated() && session.isOpen()) {
-                log.info("SSH: Connected to '%s:%s.'".formatted(request.getIp(), request.getService()));
-
-                Map<String, String> macrosNeedUpdate = new HashMap<>();
-                if (request.getZabbixId() == 0) {
-                    request.setZabbixId(zabbixService.getHostId(request.getName()));
-                    if (request.getZabbixId() == 0) {
-                        log.warn("SHELL: Zabbix router ID not set.");
-                    } else {
-                        macrosNeedUpdate.put(MACRO_ROUTER_ID, valueOf(request.getZabbixId()));
+        final String routerKey = request.routerKey();
+        final ScanSession probeSession = portScanner.newSession(latency.timeout(routerKey, PROBE));
+        // Device ports are forwarded to devices behind router, latency of router does not apply to them
+        final ScanSession scanSession = portScanner.newSession(SCAN_TIMEOUT);
+        Map<Device, CompletableFuture<Set<Integer>>> scans = null;
+        try {
+            latency.measure(routerKey, PROBE, () -> connectivityCheck(request, probeSession));
+            scans = scanDevices(request, scanSession);
+            metrics.track(SCAN, brand, SSH, CompletableFuture.allOf(scans.values().toArray(CompletableFuture[]::new)));
+
+            for (int attempt = 0; ; attempt++) {
+                try (var lease = sessionPool.borrow(request, brand, attempt > 0)) {
+                    try {
+                        return executeFullSurvey(lease.session(), request, brand, scans);
+                    } catch (IOException ex) {
+                        lease.invalidate();
+                        // Router may drop idle pooled session, reconnect once
+                        if (!lease.isReused() || lease.session().isOpen()) throw ex;
+                        log.warn("SSH: Pooled session to '%s' is broken, reconnect.".formatted(request.getIp()));
                     }
                 }
+            }
+        } catch (Exception ex) {
+            log.error("SSH: %s CRITICAL FAIL: '%s'".formatted(request.getName(), ex.getLocalizedMessage()));
+            metrics.fallback(brand, SSH, "error");
+            return executeSurveyShort(request, true, scanSession);
+        }
+    }
 
-                final Map<String, String> arpMap = getArpMap(session.executeRemoteCommand(brand.getArp(), err, UTF_8));
-                log.info("SSH: Received device list: '%s'.".formatted(arpMap.entrySet().toString()));
+    @NonNull
+    private SurveyResponse executeFullSurvey(@NonNull ClientSession session,
+                                             @NonNull SurveyRequest request,
+                                             @NonNull Brand brand,
+                                             @NonNull Map<Device, CompletableFuture<Set<Integer>>> scans) throws IOException {
+        log.info("SSH: Connected to '%s:%s.'".formatted(request.getIp(), request.getService()));
 
-                final Map<String, DeviceStatus> resultMap = request.devices().stream()
-                        .filter(AbstractRouterClient::isNonDefaultDevice)
-                        .peek(device -> device.setIp(arpMap.getOrDefault(device.getMac(), device.getIp())))
-                        .map(device -> {
-                            var result = fullCheck(device, session, brand, request.getIp());
-                            if (ONLINE.getCode() == result.getValue().code())
-                                add2UpdateIfNeed(device, arpMap, macrosNeedUpdate);
-                            return result;
-                        })
-                        .collect(toMap(Map.Entry::getKey, Map.Entry::getValue, (firstVal, secondVal) -> firstVal));
+        Map<String, String> macrosNeedUpdate = new ConcurrentHashMap<>();
 
-                if (request.getZabbixId() != 0 && !macrosNeedUpdate.isEmpty())
-                    executorService.schedule(
-                            () -> zabbixService.updateMacros(request.getZabbixId(), macrosNeedUpdate), 5, SECONDS);
+        // Host ID is resolved in background, it is never waited inside router session
+        final boolean isRouterIdUnknown = request.getZabbixId() == 0;
+        final CompletableFuture<Integer> zabbixId = isRouterIdUnknown
+                ? hostIdCache.resolve(request.getName())
+                : CompletableFuture.completedFuture(request.getZabbixId());
+        if (isRouterIdUnknown) metrics.track(ZABBIX, brand, SSH, zabbixId);
 
-                return completeResults(resultMap, new StringBuilder(), arpMap, request.mac2key());
+        final Optional<Map<String, String>> cachedArp = arpCache.get(request.routerKey());
+        final Map<String, String> arpMap = cachedArp.isPresent()
+                ? cachedArp.get()
+                : metrics.time(ARP, brand, SSH, () -> latency.measure(request.routerKey(), COMMAND, () -> getArpMap(
+                        executeRemoteCommand(session, brand.getArp(), latency.timeout(request.routerKey(), COMMAND)))));
+        if (cachedArp.isEmpty()) arpCache.update(request.routerKey(), arpMap);
+        log.info("SSH: Received device list%s: '%s'."
+                .formatted(cachedArp.isPresent() ? " from cache" : "", arpMap.entrySet().toString()));
+
+        final Map<Device, String> requestIps = new IdentityHashMap<>();
+        scans.keySet().forEach(device -> {
+            requestIps.put(device, device.getIp());
+            device.setIp(arpMap.getOrDefault(device.getMac(), device.getIp()));
+        });
+        final Map<String, Map.Entry<Boolean, String>> pings = executeBatchPing(session, brand, pingTargets(scans.keySet()));
+
+        // Devices are checked concurrently over separate exec channels of one session,
+        // permit is taken before submit, so session never has more than max-channels checks queued or running
+        final Semaphore channels = new Semaphore(maxChannels);
+        final Map<String, DeviceStatus> resultMap = new ConcurrentHashMap<>();
+        final List<CompletableFuture<Void>> checks = new ArrayList<>();
+        try {
+            for (var scan : scans.entrySet()) {
+                channels.acquire();
+                try {
+                    checks.add(CompletableFuture.runAsync(() -> {
+                        try {
+                            var device = scan.getKey();
+                            var result = fullCheck(device, scan.getValue(), session, brand, pings);
+                            if (ONLINE.getCode() == result.getValue().code())
+                                add2UpdateIfNeed(device, requestIps.get(device), arpMap, macrosNeedUpdate);
+                            resultMap.putIfAbsent(result.getKey(), result.getValue());
+                        } finally {
+                            channels.release();
+                        }
+                    }, channelExecutor));
+                } catch (RuntimeException ex) {
+                    channels.release();
+                    throw ex;
+                }
             }
-            return executeSurveyShort(request, true);
-        } catch (Exception ex) {
-            log.error("SSH: %s CRITICAL FAIL: '%s'".formatted(request.getName(), ex.getLocalizedMessage()));
-            return executeSurveyShort(request, true);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Survey of '%s' interrupted.".formatted(request.getIp()));
+        } finally {
+            CompletableFuture.allOf(checks.toArray(CompletableFuture[]::new)).join();
         }
+
+        zabbixId.thenAccept(hostId -> {
+            if (hostId == 0) {
+                log.warn("SHELL: Zabbix router ID not set.");
+                return;
+            }
+            request.setZabbixId(hostId);
+            if (isRouterIdUnknown) macrosNeedUpdate.put(MACRO_ROUTER_ID, valueOf(hostId));
+            if (!macrosNeedUpdate.isEmpty())
+                macroUpdateQueue.enqueue(hostId, macrosNeedUpdate);
+        });
+
+        return completeResults(resultMap, new StringBuilder(), arpMap, request.mac2key());
     }
 
     @NonNull
     private Map.Entry<String, DeviceStatus> fullCheck(@NonNull Device device,
+                                                      @NonNull CompletableFuture<Set<Integer>> scan,
                                                       @NonNull ClientSession session,
                                                       @NonNull Brand brand,
-                                                      @NonNull String hostIp) {
-        final Set<Integer> openedPorts = scanPorts(hostIp, device.getPorts());
-        log.info("SSH: Opened ports on '%s' is '%s'".formatted(device.getType(), openedPorts));
-
+                                                      @NonNull Map<String, Map.Entry<Boolean, String>> pings) {
         if (ROUTER.equals(device.getType())) {
+            final Set<Integer> openedPorts = scan.join();
+            log.info("SSH: Opened ports on '%s' is '%s'".formatted(device.getType(), openedPorts));
             return Map.entry(device.getKey(),
                     new DeviceStatus(
                             openedPorts.isEmpty() ? OFFLINE.getCode() : ONLINE.getCode(),
@@ -104,8 +215,12 @@ public class SSHRouterClientImpl extends AbstractRouterClient {
         try {
             final Map.Entry<Boolean, String> pingResult = DEFAULT_IP.equalsIgnoreCase(device.getIp())
                     ? Map.entry(false, IP_NOT_FOUND_IN_ARP)
-                    : executePing(session, brand.getPing(device.getIp()));
+                    : pings.containsKey(device.getIp())
+                    ? pings.get(device.getIp())
+                    : executePing(session, brand, brand.getPing(device.getIp()));
             log.info("SSH: Ping device '%s', result: '%s'.".formatted(device.getType(), pingResult));
+            final Set<Integer> openedPorts = scan.join();
+            log.info("SSH: Opened ports on '%s' is '%s'".formatted(device.getType(), openedPorts));
 
             var isPingFail = NOT_RECOGNIZED.equalsIgnoreCase(pingResult.getValue());
             return Map.entry(device.getKey(),
@@ -115,6 +230,7 @@ public class SSHRouterClientImpl extends AbstractRouterClient {
                             FULL_CHECK_RESULT.formatted(pingResult.getValue(), openedPorts)));
         } catch (Exception ex) {
             log.warn("SSH: Device check failed, message: '%s'".formatted(ex.getLocalizedMessage()));
+            final Set<Integer> openedPorts = scan.join();
             return Map.entry(device.getKey(),
                     new DeviceStatus(
                             isOnline(false, !openedPorts.isEmpty(), PING_OR_PORTS) ? ONLINE.getCode() : OFFLINE.getCode(),
@@ -123,10 +239,64 @@ public class SSHRouterClientImpl extends AbstractRouterClient {
     }
 
     @NonNull
-    private Map.Entry<Boolean, String> executePing(@NonNull ClientSession session, @NonNull String cmd) throws IOException {
-        var result = toPingResult(session.executeRemoteCommand(cmd, err, UTF_8));
+    private Map.Entry<Boolean, String> executePing(@NonNull ClientSession session, @NonNull Brand brand,
+                                                   @NonNull String cmd) throws IOException {
+        var result = metrics.time(PING, brand, SSH, () -> toPingResult(session.executeRemoteCommand(cmd, err, UTF_8)));
+        if (result.getKey()) return result;
         // Repeated ping to prevent frequent false signals
-        return result.getKey() ? result : toPingResult(session.executeRemoteCommand(cmd, err, UTF_8));
+        metrics.pingRetry(brand, SSH, 1);
+        return metrics.time(PING, brand, SSH, () -> toPingResult(session.executeRemoteCommand(cmd, err, UTF_8)));
+    }
+
+    @NonNull
+    private Map<String, Map.Entry<Boolean, String>> executeBatchPing(@NonNull ClientSession session,
+                                                                     @NonNull Brand brand,
+                                                                     @NonNull Set<String> ips) {
+        final Map<String, Map.Entry<Boolean, String>> result = new HashMap<>();
+        if (ips.isEmpty() || !brand.hasBatchPing()) return result;
+        try {
+            result.putAll(metrics.time(PING, brand, SSH,
+                    () -> toPingResults(session.executeRemoteCommand(brand.getBatchPing(ips), err, UTF_8))));
+            // Repeated ping of failed devices to prevent frequent false signals
+            final Set<String> failed = ips.stream()
+                    .filter(ip -> !result.containsKey(ip) || !result.get(ip).getKey())
+                    .collect(toSet());
+            if (!failed.isEmpty()) {
+                metrics.pingRetry(brand, SSH, failed.size());
+                result.putAll(metrics.time(PING, brand, SSH,
+                        () -> toPingResults(session.executeRemoteCommand(brand.getBatchPing(failed), err, UTF_8))));
+            }
+        } catch (Exception ex) {
+            log.warn("SSH: Batch ping failed, ping devices one by one, message: '%s'".formatted(ex.getLocalizedMessage()));
+        }
+        return result;
+    }
+
+    /**
+     * Exec command on router, unlike {@link ClientSession#executeRemoteCommand(String)} output is waited
+     * no longer than timeout
+     *
+     * @param session session of router
+     * @param cmd     command
+     * @param timeout timeout in millis
+     * @return output of command
+     * @throws IOException command failed or timed out
+     */
+    @NonNull
+    private static String executeRemoteCommand(@NonNull ClientSession session, @NonNull String cmd,
+                                               long timeout) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ChannelExec channel = session.createExecChannel(cmd)) {
+            channel.setOut(out);
+            channel.setErr(OutputStream.nullOutputStream());
+            channel.open().verify(timeout);
+            if (channel.waitFor(REMOTE_COMMAND_WAIT_EVENTS, timeout).contains(ClientChannelEvent.TIMEOUT))
+                throw new SocketTimeoutException("Command '%s' timed out after '%s' ms.".formatted(cmd, timeout));
+            final Integer exitStatus = channel.getExitStatus();
+            if (exitStatus != null && exitStatus != 0)
+                throw new IOException("Remote command failed (%s): %s".formatted(exitStatus, cmd));
+        }
+        return out.toString(UTF_8);
     }
 
 }
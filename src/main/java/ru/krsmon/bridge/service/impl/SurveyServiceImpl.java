@@ -0,0 +1,92 @@
+package ru.krsmon.bridge.service.impl;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Service;
+import ru.krsmon.bridge.model.Brand;
+import ru.krsmon.bridge.model.Device;
+import ru.krsmon.bridge.model.Protocol;
+import ru.krsmon.bridge.model.SurveyCompletedEvent;
+import ru.krsmon.bridge.model.SurveyRequest;
+import ru.krsmon.bridge.model.SurveyResponse;
+import ru.krsmon.bridge.service.RouterClient;
+import ru.krsmon.bridge.service.SurveyService;
+import ru.krsmon.bridge.service.cache.RouterCircuitBreaker;
+import ru.krsmon.bridge.service.cache.SurveyResultCache;
+import ru.krsmon.bridge.service.metrics.SurveyMetrics;
+import ru.krsmon.bridge.service.pool.RouterWorkScheduler;
+import ru.krsmon.bridge.service.pool.RouterWorkScheduler.Lane;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import static ru.krsmon.bridge.model.Brand.TPLINK;
+import static ru.krsmon.bridge.service.AbstractRouterClient.executeSurveyShort;
+
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SurveyServiceImpl implements SurveyService {
+    protected final Map<String, RouterClient> clients;
+    protected final RouterWorkScheduler workScheduler;
+    protected final SurveyMetrics metrics;
+    protected final SurveyResultCache resultCache;
+    protected final RouterCircuitBreaker breaker;
+    protected final ApplicationEventPublisher eventPublisher;
+
+    @NonNull
+    @Override
+    public CompletableFuture<SurveyResponse> survey(@NonNull Brand brand, @NonNull Protocol protocol,
+                                                    @NonNull SurveyRequest request, @NonNull Lane lane) {
+        return resultCache.get(surveyKey(brand, protocol, request), () -> {
+            // Dead router is answered at once, it never waits in scheduler queue
+            final Optional<SurveyResponse> offline = breaker.reject(request);
+            if (offline.isPresent()) return CompletableFuture.completedFuture(offline.get());
+
+            metrics.surveyStarted();
+            return workScheduler.submit(lane, request.routerKey(), brand, () -> {
+                        if (!TPLINK.equals(brand) && clients.containsKey(protocol.name()))
+                            return clients.get(protocol.name()).executeFullSurvey(request, brand);
+                        metrics.fallback(brand, protocol, "unsupported");
+                        return executeSurveyShort(request, false);
+                    })
+                    .whenComplete((response, ex) -> {
+                        metrics.surveyFinished();
+                        breaker.record(request.routerKey(), ex == null ? response : null);
+                        if (ex == null) publish(new SurveyCompletedEvent(brand, protocol, request, response));
+                    });
+        });
+    }
+
+    private void publish(@NonNull SurveyCompletedEvent event) {
+        try {
+            eventPublisher.publishEvent(event);
+        } catch (Exception ex) {
+            log.warn("SURVEY: Fail to handle result of '%s', message: '%s'"
+                    .formatted(event.request().getName(), ex.getLocalizedMessage()));
+        }
+    }
+
+    /**
+     * Key of identical surveys: same router, credentials and device set, order of devices is ignored.
+     * Password is in key as hash only, request with wrong password never gets result of right one
+     */
+    @NonNull
+    private static String surveyKey(@NonNull Brand brand, @NonNull Protocol protocol, @NonNull SurveyRequest request) {
+        final Collection<Device> devices = request.getDevices() == null ? Set.of() : request.getDevices();
+        return "%s|%s|%s|%s|%s|%s|%s".formatted(brand, protocol, request.getIp(), request.getService(), request.getLogin(),
+                request.passwordHash(),
+                devices.stream()
+                        .map(device -> "%s;%s;%s;%s;%s;%s;%s;%s".formatted(device.getKey(), device.getMac(),
+                                device.getIp(), device.getType(), device.getHttp(), device.getMedia(),
+                                device.getService(), device.getSpec()))
+                        .sorted()
+                        .collect(Collectors.joining(",")));
+    }
+
+}
@@ -1,36 +1,49 @@
 package ru.krsmon.bridge.service.impl;
 
 import lombok.RequiredArgsConstructor;
-import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import net.sf.expectit.Expect;
-import net.sf.expectit.ExpectBuilder;
-import org.apache.commons.net.telnet.TelnetClient;
-import org.jetbrains.annotations.NotNull;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.lang.NonNull;
 import org.springframework.stereotype.Service;
+import ru.krsmon.bridge.external.zabbix.MacroUpdateQueue;
 import ru.krsmon.bridge.external.zabbix.service.ZabbixService;
 import ru.krsmon.bridge.model.*;
 import ru.krsmon.bridge.service.AbstractRouterClient;
+import ru.krsmon.bridge.service.PortScanner.ScanSession;
+import ru.krsmon.bridge.service.cache.ArpCache;
+import ru.krsmon.bridge.service.cache.HostIdCache;
+import ru.krsmon.bridge.service.cache.LatencyModel;
+import ru.krsmon.bridge.service.metrics.SurveyMetrics;
+import ru.krsmon.bridge.service.pool.CommandCapture;
+import ru.krsmon.bridge.service.pool.TelnetSessionPool;
 import java.io.IOException;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
-import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 import static java.lang.String.valueOf;
 import static java.nio.charset.StandardCharsets.UTF_8;
-import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.stream.Collectors.toMap;
+import static java.util.stream.Collectors.toSet;
 import static net.sf.expectit.matcher.Matchers.contains;
-import static org.apache.commons.net.SocketClient.NETASCII_EOL;
 import static ru.krsmon.bridge.external.zabbix.model.ZabbixConstrains.MACRO_ROUTER_ID;
 import static ru.krsmon.bridge.model.DeviceStatus.Status.OFFLINE;
 import static ru.krsmon.bridge.model.DeviceStatus.Status.ONLINE;
 import static ru.krsmon.bridge.model.DeviceType.ROUTER;
 import static ru.krsmon.bridge.model.Policy.PING_OR_PORTS;
 import static ru.krsmon.bridge.model.Policy.PORT_ONLY;
+import static ru.krsmon.bridge.model.Protocol.TELNET;
+import static ru.krsmon.bridge.service.cache.LatencyModel.Kind.AUTH;
+import static ru.krsmon.bridge.service.cache.LatencyModel.Kind.COMMAND;
+import static ru.krsmon.bridge.service.cache.LatencyModel.Kind.PROBE;
+import static ru.krsmon.bridge.service.metrics.SurveyMetrics.Phase.ARP;
+import static ru.krsmon.bridge.service.metrics.SurveyMetrics.Phase.PING;
+import static ru.krsmon.bridge.service.metrics.SurveyMetrics.Phase.SCAN;
+import static ru.krsmon.bridge.service.metrics.SurveyMetrics.Phase.ZABBIX;
 import static ru.krsmon.bridge.utils.RegexUtils.*;
 
 @Slf4j
@@ -38,80 +51,122 @@ import static ru.krsmon.bridge.utils.RegexUtils.*;
 @RequiredArgsConstructor
 public class TelnetRouterClientImpl extends AbstractRouterClient {
     protected final ZabbixService zabbixService;
-
-    @Value("${server.tomcat.connection-timeout}")
-    private Integer timeout;
+    protected final MacroUpdateQueue macroUpdateQueue;
+    protected final ArpCache arpCache;
+    protected final HostIdCache hostIdCache;
+    protected final SurveyMetrics metrics;
+    protected final LatencyModel latency;
+    protected final TelnetSessionPool sessionPool;
 
     @NonNull
     @Override
-    @SneakyThrows
     public SurveyResponse executeFullSurvey(@NonNull SurveyRequest request, @NonNull Brand brand) {
-        final TelnetClient client = new TelnetClient();
-        final StringBuilder logger = new StringBuilder();
+        final String routerKey = request.routerKey();
+        final ScanSession probeSession = portScanner.newSession(latency.timeout(routerKey, PROBE));
+        // Device ports are forwarded to devices behind router, latency of router does not apply to them
+        final ScanSession scanSession = portScanner.newSession(SCAN_TIMEOUT);
+        Map<Device, CompletableFuture<Set<Integer>>> scans = null;
         try {
-            connectivityCheck(request);
-            client.setDefaultTimeout(timeout * 1000);
-            client.connect(request.getIp(), request.getService());
-            if (client.isConnected()) {
-                try (final Expect expect = createExpect(client, logger)) {
-                    expect.withTimeout(10, SECONDS).expect(contains(LOGIN));
-                    expect.sendLine(request.getLogin());
-                    expect.withTimeout(10, SECONDS).expect(contains(PASS));
-                    expect.sendLine(request.getPassword());
-                    expect.withTimeout(10, SECONDS).expect(contains(brand.getInvite()));
-                    log.info("TELNET: Connected to '%s:%s.'".formatted(request.getIp(), request.getService()));
-
-                    Map<String, String> macrosNeedUpdate = new HashMap<>();
-                    if (request.getZabbixId() == 0) {
-                        request.setZabbixId(zabbixService.getHostId(request.getName()));
-                        if (request.getZabbixId() == 0) {
-                            log.warn("SHELL: Zabbix router ID not set.");
-                        } else {
-                            macrosNeedUpdate.put(MACRO_ROUTER_ID, valueOf(request.getZabbixId()));
-                        }
-                    }
+            latency.measure(routerKey, PROBE, () -> connectivityCheck(request, probeSession));
+            scans = scanDevices(request, scanSession);
+            metrics.track(SCAN, brand, TELNET, CompletableFuture.allOf(scans.values().toArray(CompletableFuture[]::new)));
 
-                    final Map<String, String> arpMap =
-                            getArpMap(executeRemoteCommand(expect, logger, brand.getArp(), brand.getInvite()));
-                    log.info("TELNET: Received device list: '%s'.".formatted(arpMap.entrySet().toString()));
-
-                    final Map<String, DeviceStatus> resultMap = request.devices().stream()
-                            .filter(AbstractRouterClient::isNonDefaultDevice)
-                            .peek(device -> device.setIp(arpMap.getOrDefault(device.getMac(), device.getIp())))
-                            .map(device -> {
-                                var result = fullCheck(device, expect, logger, brand, request.getIp());
-                                if (ONLINE.getCode() == result.getValue().code())
-                                    add2UpdateIfNeed(device, arpMap, macrosNeedUpdate);
-                                return result;
-                            })
-                            .collect(toMap(Map.Entry::getKey, Map.Entry::getValue, (firstVal, secondVal) -> firstVal));
-
-                    if (request.getZabbixId() != 0 && !macrosNeedUpdate.isEmpty())
-                        executorService.schedule(
-                                () -> zabbixService.updateMacros(request.getZabbixId(), macrosNeedUpdate), 5, SECONDS);
-
-                    return completeResults(resultMap, new StringBuilder(), arpMap, request.mac2key());
+            for (int attempt = 0; ; attempt++) {
+                try (var lease = sessionPool.borrow(request, brand, this::login, attempt > 0)) {
+                    try {
+                        return executeFullSurvey(lease.expect(), lease.capture(), request, brand, scans);
+                    } catch (IOException ex) {
+                        lease.invalidate();
+                        // Router may drop line of pooled session, login again once
+                        if (!lease.isReused() || lease.isConnected()) throw ex;
+                        log.warn("TELNET: Pooled session to '%s' is broken, login again.".formatted(request.getIp()));
+                    }
                 }
             }
-            return executeSurveyShort(request, true);
         } catch (Exception ex) {
             log.error("TELNET: %s: CRITICAL FAIL: '%s'".formatted(request.getName(), ex.getLocalizedMessage()));
-            return executeSurveyShort(request, true);
-        } finally {
-            if (client.isConnected()) client.disconnect();
+            metrics.fallback(brand, TELNET, "error");
+            return executeSurveyShort(request, true, scanSession);
         }
     }
 
+    @NonNull
+    private SurveyResponse executeFullSurvey(@NonNull Expect expect,
+                                             @NonNull CommandCapture capture,
+                                             @NonNull SurveyRequest request,
+                                             @NonNull Brand brand,
+                                             @NonNull Map<Device, CompletableFuture<Set<Integer>>> scans) throws IOException {
+        Map<String, String> macrosNeedUpdate = new HashMap<>();
+
+        // Host ID is resolved in background, it is never waited inside router session
+        final boolean isRouterIdUnknown = request.getZabbixId() == 0;
+        final CompletableFuture<Integer> zabbixId = isRouterIdUnknown
+                ? hostIdCache.resolve(request.getName())
+                : CompletableFuture.completedFuture(request.getZabbixId());
+        if (isRouterIdUnknown) metrics.track(ZABBIX, brand, TELNET, zabbixId);
+
+        final Optional<Map<String, String>> cachedArp = arpCache.get(request.routerKey());
+        final Map<String, String> arpMap = cachedArp.isPresent()
+                ? cachedArp.get()
+                : metrics.time(ARP, brand, TELNET, () -> latency.measure(request.routerKey(), COMMAND,
+                        () -> getArpMap(executeRemoteCommand(expect, capture, brand.getArp(), brand.getInvite(),
+                                latency.timeout(request.routerKey(), COMMAND)))));
+        if (cachedArp.isEmpty()) arpCache.update(request.routerKey(), arpMap);
+        log.info("TELNET: Received device list%s: '%s'."
+                .formatted(cachedArp.isPresent() ? " from cache" : "", arpMap.entrySet().toString()));
+
+        final Map<Device, String> requestIps = new IdentityHashMap<>();
+        scans.keySet().forEach(device -> {
+            requestIps.put(device, device.getIp());
+            device.setIp(arpMap.getOrDefault(device.getMac(), device.getIp()));
+        });
+        final Map<String, Map.Entry<Boolean, String>> pings =
+                executeBatchPing(expect, capture, brand, pingTargets(scans.keySet()));
+
+        final Map<String, DeviceStatus> resultMap = scans.entrySet().stream()
+                .map(scan -> {
+                    var device = scan.getKey();
+                    var result = fullCheck(device, scan.getValue(), expect, capture, brand, pings);
+                    if (ONLINE.getCode() == result.getValue().code())
+                        add2UpdateIfNeed(device, requestIps.get(device), arpMap, macrosNeedUpdate);
+                    return result;
+                })
+                .collect(toMap(Map.Entry::getKey, Map.Entry::getValue, (firstVal, secondVal) -> firstVal));
+
+        zabbixId.thenAccept(hostId -> {
+            if (hostId == 0) {
+                log.warn("SHELL: Zabbix router ID not set.");
+                return;
+            }
+            request.setZabbixId(hostId);
+            if (isRouterIdUnknown) macrosNeedUpdate.put(MACRO_ROUTER_ID, valueOf(hostId));
+            if (!macrosNeedUpdate.isEmpty())
+                macroUpdateQueue.enqueue(hostId, macrosNeedUpdate);
+        });
+
+        return completeResults(resultMap, new StringBuilder(), arpMap, request.mac2key());
+    }
+
+    private void login(@NonNull Expect expect, @NonNull SurveyRequest request, @NonNull Brand brand) throws IOException {
+        final long timeout = latency.timeout(request.routerKey(), AUTH);
+        expect.withTimeout(timeout, MILLISECONDS).expect(contains(LOGIN));
+        expect.sendLine(request.getLogin());
+        expect.withTimeout(timeout, MILLISECONDS).expect(contains(PASS));
+        expect.sendLine(request.getPassword());
+        expect.withTimeout(timeout, MILLISECONDS).expect(contains(brand.getInvite()));
+        log.info("TELNET: Connected to '%s:%s.'".formatted(request.getIp(), request.getService()));
+    }
+
     @NonNull
     private Map.Entry<String, DeviceStatus> fullCheck(@NonNull Device device,
+                                                      @NonNull CompletableFuture<Set<Integer>> scan,
                                                       @NonNull Expect expect,
-                                                      @NonNull StringBuilder logger,
+                                                      @NonNull CommandCapture capture,
                                                       @NonNull Brand brand,
-                                                      @NonNull String hostIp) {
-        final Set<Integer> openedPorts = scanPorts(hostIp, device.getPorts());
-        log.info("TELNET: Opened ports on '%s' is '%s'".formatted(device.getType(), openedPorts));
-
+                                                      @NonNull Map<String, Map.Entry<Boolean, String>> pings) {
         if (ROUTER.equals(device.getType())) {
+            final Set<Integer> openedPorts = scan.join();
+            log.info("TELNET: Opened ports on '%s' is '%s'".formatted(device.getType(), openedPorts));
             return Map.entry(device.getKey(),
                     new DeviceStatus(
                             openedPorts.isEmpty() ? OFFLINE.getCode() : ONLINE.getCode(),
@@ -121,8 +176,12 @@ public class TelnetRouterClientImpl extends AbstractRouterClient {
         try {
             final Map.Entry<Boolean, String> pingResult = DEFAULT_IP.equalsIgnoreCase(device.getIp())
                     ? Map.entry(false, IP_NOT_FOUND_IN_ARP)
-                    : executePing(expect, logger, brand.getPing(device.getIp()), brand.getInvite());
+                    : pings.containsKey(device.getIp())
+                    ? pings.get(device.getIp())
+                    : executePing(expect, capture, brand, brand.getPing(device.getIp()));
             log.info("TELNET: Ping device '%s', result: '%s'.".formatted(device.getType(), pingResult));
+            final Set<Integer> openedPorts = scan.join();
+            log.info("TELNET: Opened ports on '%s' is '%s'".formatted(device.getType(), openedPorts));
 
             var isPingFail = NOT_RECOGNIZED.equalsIgnoreCase(pingResult.getValue());
             return Map.entry(device.getKey(),
@@ -132,6 +191,7 @@ public class TelnetRouterClientImpl extends AbstractRouterClient {
                             FULL_CHECK_RESULT.formatted(pingResult.getValue(), openedPorts)));
         } catch (Exception ex) {
             log.warn("TELNET: Device check failed, message: '%s'".formatted(ex.getLocalizedMessage()));
+            final Set<Integer> openedPorts = scan.join();
             return Map.entry(device.getKey(),
                     new DeviceStatus(
                             isOnline(false, !openedPorts.isEmpty(), PING_OR_PORTS) ? ONLINE.getCode() : OFFLINE.getCode(),
@@ -140,36 +200,83 @@ public class TelnetRouterClientImpl extends AbstractRouterClient {
     }
 
     @NonNull
-    private Map.Entry<Boolean, String> executePing(@NonNull Expect expect, @NonNull StringBuilder logger,
-                                                   @NonNull String cmd, @NonNull String invite) throws IOException {
-        var result = toPingResult(executeRemoteCommand(expect, logger, cmd, invite));
+    private Map.Entry<Boolean, String> executePing(@NonNull Expect expect, @NonNull CommandCapture capture,
+                                                   @NonNull Brand brand, @NonNull String cmd) throws IOException {
+        // Ping time depends on device, not on router, so it is not learned
+        final long pingTimeout = latency.ceiling(COMMAND);
+        var result = metrics.time(PING, brand, TELNET,
+                () -> toPingResult(executeRemoteCommand(expect, capture, cmd, brand.getInvite(), pingTimeout)));
+        if (result.getKey()) return result;
         // Repeated ping to prevent frequent false signals
-        return result.getKey() ? result : toPingResult(executeRemoteCommand(expect, logger, cmd, invite));
+        metrics.pingRetry(brand, TELNET, 1);
+        return metrics.time(PING, brand, TELNET,
+                () -> toPingResult(executeRemoteCommand(expect, capture, cmd, brand.getInvite(), pingTimeout)));
+    }
+
+    /**
+     * Ping devices by one command, failed devices are pinged one by one later. Loop of batch that is
+     * still running on router would answer next command, so session is given up when batch did not finish
+     *
+     * @throws IOException batch is not finished on router, session can not be used
+     */
+    @NonNull
+    private Map<String, Map.Entry<Boolean, String>> executeBatchPing(@NonNull Expect expect,
+                                                                     @NonNull CommandCapture capture,
+                                                                     @NonNull Brand brand,
+                                                                     @NonNull Set<String> ips) throws IOException {
+        final Map<String, Map.Entry<Boolean, String>> result = new HashMap<>();
+        if (ips.isEmpty() || !brand.hasBatchPing()) return result;
+        final long pingTimeout = latency.ceiling(COMMAND);
+        try {
+            result.putAll(metrics.time(PING, brand, TELNET, () -> toPingResults(executeRemoteCommand(
+                    expect, capture, brand.getBatchPing(ips), brand.getInvite(), PING_BATCH_DONE, pingTimeout))));
+            // Repeated ping of failed devices to prevent frequent false signals
+            final Set<String> failed = ips.stream()
+                    .filter(ip -> !result.containsKey(ip) || !result.get(ip).getKey())
+                    .collect(toSet());
+            if (!failed.isEmpty()) {
+                metrics.pingRetry(brand, TELNET, failed.size());
+                result.putAll(metrics.time(PING, brand, TELNET, () -> toPingResults(executeRemoteCommand(
+                        expect, capture, brand.getBatchPing(failed), brand.getInvite(), PING_BATCH_DONE, pingTimeout))));
+            }
+        } catch (Exception ex) {
+            if (!capture.isCompleted()) throw new IOException("Batch ping is not finished on router.", ex);
+            log.warn("TELNET: Batch ping failed, ping devices one by one, message: '%s'".formatted(ex.getLocalizedMessage()));
+        }
+        return result;
     }
 
     @NonNull
-    private String executeRemoteCommand(@NonNull Expect expect, @NonNull StringBuilder logger,
-                                        @NonNull String cmd, @NonNull String invite) throws IOException {
-        expect.sendLine(cmd);
-        var uuid = UUID.randomUUID().toString();
-        logger.append(uuid);
-        expect.withTimeout(10, SECONDS).expect(contains(invite));
-        return logger.substring(logger.toString().indexOf(uuid));
+    private String executeRemoteCommand(@NonNull Expect expect, @NonNull CommandCapture capture,
+                                        @NonNull String cmd, @NonNull String invite, long timeout) throws IOException {
+        return executeRemoteCommand(expect, capture, cmd, invite, invite, timeout);
     }
 
-    @NotNull
-    @SneakyThrows
-    private Expect createExpect(@NonNull TelnetClient client, @NonNull StringBuilder logger) {
-        return new ExpectBuilder()
-                .withOutput(client.getOutputStream())
-                .withInputs(client.getInputStream())
-                .withEchoOutput(logger)
-                .withEchoInput(logger)
-                .withLineSeparator(NETASCII_EOL)
-                .withAutoFlushEcho(true)
-                .withExceptionOnFailure()
-                .withCharset(UTF_8)
-                .build();
+    @NonNull
+    private String executeRemoteCommand(@NonNull Expect expect, @NonNull CommandCapture capture,
+                                        @NonNull String cmd, @NonNull String invite,
+                                        @NonNull String outputEnd, long timeout) throws IOException {
+        // Echo of command may contain invite, wait end of output first
+        if (invite.equals(outputEnd)) capture.begin(invite);
+        else capture.begin(outputEnd, invite);
+        try {
+            expect.sendLine(cmd);
+            expect.withTimeout(timeout, MILLISECONDS).expect(capture.completed());
+            return capture.end();
+        } catch (IOException | RuntimeException ex) {
+            // Late output of command must not be taken as output of next one, wait its end once more
+            if (!capture.isCompleted()) awaitCompleted(expect, capture, timeout);
+            capture.end();
+            throw ex;
+        }
+    }
+
+    private void awaitCompleted(@NonNull Expect expect, @NonNull CommandCapture capture, long timeout) {
+        try {
+            expect.withTimeout(timeout, MILLISECONDS).expect(capture.completed());
+        } catch (IOException ex) {
+            log.warn("TELNET: Command is not finished on router, message: '%s'".formatted(ex.getLocalizedMessage()));
+        }
     }
 
 }
@@ -0,0 +1,146 @@
+package ru.krsmon.bridge.service.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import ru.krsmon.bridge.model.Brand;
+import ru.krsmon.bridge.model.Protocol;
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Phase timers and counters of router survey, all meters are tagged by brand and protocol.
+ */
+@Component
+@RequiredArgsConstructor
+public class SurveyMetrics {
+    protected static final String SUCCESS = "success";
+    protected static final String ERROR = "error";
+    protected final Map<Key, Timer> timers = new ConcurrentHashMap<>();
+    protected final AtomicInteger inFlight = new AtomicInteger();
+    protected final MeterRegistry registry;
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("survey.in.flight", inFlight, AtomicInteger::get)
+                .description("Surveys accepted and not finished yet.")
+                .register(registry);
+    }
+
+    /**
+     * Time phase of survey, outcome is error when call throws
+     *
+     * @param phase    фаза опроса
+     * @param brand    бренд роутера
+     * @param protocol протокол подключения
+     * @param call     phase body
+     * @return result of call
+     */
+    public <T, E extends Exception> T time(@NonNull Phase phase, @NonNull Brand brand, @NonNull Protocol protocol,
+                                           @NonNull PhaseCall<T, E> call) throws E {
+        final long start = nanoTime();
+        boolean success = false;
+        try {
+            final T result = call.call();
+            success = true;
+            return result;
+        } finally {
+            record(phase, brand, protocol, start, success);
+        }
+    }
+
+    /**
+     * Time asynchronous phase from now until future is completed
+     */
+    public void track(@NonNull Phase phase, @NonNull Brand brand, @NonNull Protocol protocol,
+                      @NonNull CompletableFuture<?> future) {
+        final long start = nanoTime();
+        future.whenComplete((ignored, ex) -> record(phase, brand, protocol, start, ex == null));
+    }
+
+    public void record(@NonNull Phase phase, @NonNull Brand brand, @NonNull Protocol protocol,
+                       long startNanos, boolean success) {
+        timers.computeIfAbsent(new Key(phase, brand, protocol, success ? SUCCESS : ERROR), this::timer)
+                .record(nanoTime() - startNanos, NANOSECONDS);
+    }
+
+    /**
+     * Count survey answered by port scan only
+     *
+     * @param reason unsupported - no full survey for brand or protocol, error - full survey failed
+     */
+    public void fallback(@NonNull Brand brand, @NonNull Protocol protocol, @NonNull String reason) {
+        Counter.builder("survey.fallback")
+                .description("Surveys answered by short scenery.")
+                .tag("brand", brand.name())
+                .tag("protocol", protocol.name())
+                .tag("reason", reason)
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * Count repeated pings of devices failed first ping
+     */
+    public void pingRetry(@NonNull Brand brand, @NonNull Protocol protocol, int devices) {
+        Counter.builder("survey.ping.retries")
+                .description("Devices pinged again after failed ping.")
+                .tag("brand", brand.name())
+                .tag("protocol", protocol.name())
+                .register(registry)
+                .increment(devices);
+    }
+
+    public void surveyStarted() {
+        inFlight.incrementAndGet();
+    }
+
+    public void surveyFinished() {
+        inFlight.decrementAndGet();
+    }
+
+    @NonNull
+    private Timer timer(@NonNull Key key) {
+        return Timer.builder("survey.phase")
+                .description("Time of router survey phase.")
+                .tag("phase", key.phase().name().toLowerCase(Locale.ROOT))
+                .tag("brand", key.brand().name())
+                .tag("protocol", key.protocol().name())
+                .tag("outcome", key.outcome())
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(5))
+                .maximumExpectedValue(Duration.ofSeconds(60))
+                .register(registry);
+    }
+
+    public enum Phase {
+        CONNECT,
+        AUTH,
+        LOGIN,
+        ARP,
+        PING,
+        SCAN,
+        ZABBIX
+    }
+
+    @FunctionalInterface
+    public interface PhaseCall<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    protected record Key(Phase phase, Brand brand, Protocol protocol, String outcome) {
+    }
+
+}
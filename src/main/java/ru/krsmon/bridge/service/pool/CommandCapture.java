@@ -0,0 +1,135 @@
+package ru.krsmon.bridge.service.pool;
+
+import lombok.extern.slf4j.Slf4j;
+import net.sf.expectit.Result;
+import net.sf.expectit.filter.Filter;
+import net.sf.expectit.matcher.Matcher;
+import net.sf.expectit.matcher.SimpleResult;
+import org.springframework.lang.NonNull;
+
+/**
+ * Bounded capture of one command output. It is input filter of expect: while command runs, input goes here
+ * instead of expect buffer, terminators (end of output, invite) are detected char by char as input arrives.
+ */
+@Slf4j
+public class CommandCapture implements Filter {
+    private final char[] buffer;
+    private int length;
+    private long dropped;
+    private boolean active;
+    private boolean enabled = true;
+    private char[][] terminators = new char[0][];
+    private int[][] prefixes = new int[0][];
+    private int stage;
+    private int matched;
+
+    /**
+     * @param capacity max chars of one command output, the rest is dropped
+     */
+    public CommandCapture(int capacity) {
+        this.buffer = new char[capacity];
+    }
+
+    /**
+     * Start capture of new command, previous output is discarded
+     *
+     * @param terminators strings expected in order, output is complete when the last one is received
+     */
+    public void begin(@NonNull String... terminators) {
+        this.terminators = new char[terminators.length][];
+        this.prefixes = new int[terminators.length][];
+        for (int i = 0; i < terminators.length; i++) {
+            this.terminators[i] = terminators[i].toCharArray();
+            this.prefixes[i] = prefixFunction(this.terminators[i]);
+        }
+        length = 0;
+        dropped = 0;
+        stage = 0;
+        matched = 0;
+        skipEmpty();
+        active = true;
+    }
+
+    /**
+     * @return matcher for expect, succeeds when all terminators are received
+     */
+    @NonNull
+    public Matcher<Result> completed() {
+        return (input, isEof) -> isCompleted()
+                ? SimpleResult.success(input, input, "")
+                : SimpleResult.failure(input, false);
+    }
+
+    /**
+     * Stop capture, input goes to expect buffer again
+     *
+     * @return captured output
+     */
+    @NonNull
+    public String end() {
+        active = false;
+        if (dropped > 0) log.warn("TELNET: Command output truncated, '%s' chars dropped.".formatted(dropped));
+        return new String(buffer, 0, length);
+    }
+
+    public boolean isCompleted() {
+        return stage >= terminators.length;
+    }
+
+    @Override
+    public String beforeAppend(String string, StringBuilder ignored) {
+        if (!active) return string;
+        for (int i = 0; i < string.length(); i++) {
+            final char ch = string.charAt(i);
+            if (length < buffer.length) buffer[length++] = ch;
+            else dropped++;
+            if (!isCompleted()) detect(ch);
+        }
+        return null;
+    }
+
+    @Override
+    public boolean afterAppend(StringBuilder ignored) {
+        return false;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Knuth-Morris-Pratt step of current terminator
+     */
+    private void detect(char ch) {
+        final char[] terminator = terminators[stage];
+        while (matched > 0 && terminator[matched] != ch) matched = prefixes[stage][matched - 1];
+        if (terminator[matched] == ch) matched++;
+        if (matched == terminator.length) {
+            stage++;
+            matched = 0;
+            skipEmpty();
+        }
+    }
+
+    private void skipEmpty() {
+        while (stage < terminators.length && terminators[stage].length == 0) stage++;
+    }
+
+    @NonNull
+    private static int[] prefixFunction(@NonNull char[] pattern) {
+        final int[] prefix = new int[pattern.length];
+        for (int i = 1, k = 0; i < pattern.length; i++) {
+            while (k > 0 && pattern[k] != pattern[i]) k = prefix[k - 1];
+            if (pattern[k] == pattern[i]) k++;
+            prefix[i] = k;
+        }
+        return prefix;
+    }
+
+}
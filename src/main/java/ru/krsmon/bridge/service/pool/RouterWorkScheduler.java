@@ -0,0 +1,235 @@
+package ru.krsmon.bridge.service.pool;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import ru.krsmon.bridge.model.Brand;
+import javax.annotation.PostConstruct;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Supplier;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Central scheduler of router work: global session budget, per-router and per-brand caps,
+ * interactive and background lanes, round-robin between routers inside each lane.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RouterWorkScheduler {
+    protected final Map<Lane, ArrayDeque<String>> rings = new EnumMap<>(Lane.class);
+    protected final Map<String, Router> routers = new HashMap<>();
+    protected final Map<Brand, Integer> brandRunning = new EnumMap<>(Brand.class);
+    protected final Map<Brand, Integer> brandCaps = new EnumMap<>(Brand.class);
+    protected final Map<Lane, Timer> waitTimers = new EnumMap<>(Lane.class);
+    protected final ExecutorService surveyExecutor;
+    protected final MeterRegistry registry;
+    protected int running;
+    protected long started;
+
+    @Value("${bridge.survey.max-concurrent}")
+    private Integer maxConcurrent;
+
+    @Value("${bridge.survey.max-per-router}")
+    private Integer maxPerRouter;
+
+    @Value("${bridge.survey.max-per-brand}")
+    private String maxPerBrand;
+
+    @Value("${bridge.survey.background-share}")
+    private Integer backgroundShare;
+
+    @PostConstruct
+    public void init() {
+        // Format: KEENETIC=64,MICROTIC=32, brands without cap are bounded by global budget only
+        for (String cap : maxPerBrand.split(",")) {
+            if (cap.isBlank()) continue;
+            final String[] brandCap = cap.split("=");
+            brandCaps.put(Brand.valueOf(brandCap[0].trim().toUpperCase(Locale.ROOT)), Integer.parseInt(brandCap[1].trim()));
+        }
+        for (Lane lane : Lane.values()) {
+            rings.put(lane, new ArrayDeque<>());
+            final String name = lane.name().toLowerCase(Locale.ROOT);
+            waitTimers.put(lane, Timer.builder("scheduler.queue.wait")
+                    .description("Time of router work in queue before start.")
+                    .tag("lane", name)
+                    .publishPercentileHistogram()
+                    .register(registry));
+            Gauge.builder("scheduler.queued", this, scheduler -> scheduler.queued(lane))
+                    .description("Router work waiting for start.")
+                    .tag("lane", name)
+                    .register(registry);
+        }
+        Gauge.builder("scheduler.running", this, RouterWorkScheduler::running)
+                .description("Router work in progress.")
+                .register(registry);
+        log.info("SURVEY: Scheduler of '%s' sessions, '%s' per router, brand caps '%s'."
+                .formatted(maxConcurrent, maxPerRouter, brandCaps));
+    }
+
+    /**
+     * Queue work of router, it is started on survey executor when lane, router and brand limits allow
+     *
+     * @param lane      lane of work
+     * @param routerKey key of router, work of one router never exceeds per-router cap
+     * @param brand     brand of router, null if work is not bounded by brand cap
+     * @param work      work
+     * @return future of work result
+     */
+    @NonNull
+    public <T> CompletableFuture<T> submit(@NonNull Lane lane, @NonNull String routerKey, Brand brand,
+                                           @NonNull Supplier<T> work) {
+        final CompletableFuture<T> future = new CompletableFuture<>();
+        final Task task = new Task(lane, routerKey, brand, System.nanoTime(), () -> {
+            try {
+                future.complete(work.get());
+            } catch (Throwable ex) {
+                future.completeExceptionally(ex);
+            }
+        });
+        synchronized (this) {
+            final Router router = routers.computeIfAbsent(routerKey, ignored -> new Router());
+            router.queues.get(lane).add(task);
+            ring(lane, routerKey, router);
+        }
+        dispatch();
+        return future;
+    }
+
+    /**
+     * Start queued work while global budget allows
+     */
+    private void dispatch() {
+        final List<Task> ready = new ArrayList<>();
+        synchronized (this) {
+            while (running < maxConcurrent) {
+                final Task task = next();
+                if (task == null) break;
+                running++;
+                routers.get(task.routerKey()).running++;
+                if (task.brand() != null) brandRunning.merge(task.brand(), 1, Integer::sum);
+                ready.add(task);
+            }
+        }
+        for (Task task : ready) {
+            waitTimers.get(task.lane()).record(System.nanoTime() - task.queuedAt(), NANOSECONDS);
+            try {
+                surveyExecutor.execute(() -> {
+                    try {
+                        task.work().run();
+                    } finally {
+                        complete(task);
+                    }
+                });
+            } catch (Exception ex) {
+                log.warn("SURVEY: Fail to start work of '%s', message: '%s'"
+                        .formatted(task.routerKey(), ex.getLocalizedMessage()));
+                complete(task);
+            }
+        }
+    }
+
+    private void complete(@NonNull Task task) {
+        synchronized (this) {
+            running--;
+            if (task.brand() != null) brandRunning.merge(task.brand(), -1, Integer::sum);
+            final Router router = routers.get(task.routerKey());
+            router.running--;
+            if (router.running == 0 && router.isIdle()) routers.remove(task.routerKey());
+            else for (Lane lane : Lane.values()) ring(lane, task.routerKey(), router);
+        }
+        dispatch();
+    }
+
+    /**
+     * Background lane gets every N-th start while both lanes wait, so polling is slowed but never starved.
+     * Only starts are counted, lookups blocked by caps do not shift the turn
+     */
+    private Task next() {
+        final boolean isBackgroundTurn = backgroundShare > 0 && (started + 1) % backgroundShare == 0;
+        final Lane first = isBackgroundTurn ? Lane.BACKGROUND : Lane.INTERACTIVE;
+        Task task = poll(first);
+        if (task == null) task = poll(first == Lane.INTERACTIVE ? Lane.BACKGROUND : Lane.INTERACTIVE);
+        if (task != null) started++;
+        return task;
+    }
+
+    private Task poll(@NonNull Lane lane) {
+        final ArrayDeque<String> ring = rings.get(lane);
+        for (int attempts = ring.size(); attempts > 0; attempts--) {
+            final String routerKey = ring.poll();
+            final Router router = routers.get(routerKey);
+            final ArrayDeque<Task> queue = router.queues.get(lane);
+            if (router.running >= maxPerRouter) {
+                // Router leaves the ring till its work is completed
+                router.inRing.put(lane, false);
+                continue;
+            }
+            final Brand brand = queue.peek().brand();
+            if (brand != null && brandRunning.getOrDefault(brand, 0) >= brandCaps.getOrDefault(brand, Integer.MAX_VALUE)) {
+                ring.add(routerKey);
+                continue;
+            }
+
+            final Task task = queue.poll();
+            if (queue.isEmpty()) router.inRing.put(lane, false);
+            else ring.add(routerKey);
+            return task;
+        }
+        return null;
+    }
+
+    private void ring(@NonNull Lane lane, @NonNull String routerKey, @NonNull Router router) {
+        if (router.queues.get(lane).isEmpty() || router.inRing.get(lane)) return;
+        router.inRing.put(lane, true);
+        rings.get(lane).add(routerKey);
+    }
+
+    private synchronized int queued(@NonNull Lane lane) {
+        return routers.values().stream().mapToInt(router -> router.queues.get(lane).size()).sum();
+    }
+
+    private synchronized int running() {
+        return running;
+    }
+
+    public enum Lane {
+        INTERACTIVE,  // Caller waits for result
+        BACKGROUND    // Polling, push mode and zabbix updates
+    }
+
+    protected static class Router {
+        private final Map<Lane, ArrayDeque<Task>> queues = new EnumMap<>(Lane.class);
+        private final Map<Lane, Boolean> inRing = new EnumMap<>(Lane.class);
+        private int running;
+
+        private Router() {
+            for (Lane lane : Lane.values()) {
+                queues.put(lane, new ArrayDeque<>());
+                inRing.put(lane, false);
+            }
+        }
+
+        private boolean isIdle() {
+            return queues.values().stream().allMatch(ArrayDeque::isEmpty);
+        }
+    }
+
+    private record Task(Lane lane, String routerKey, Brand brand, long queuedAt, Runnable work) {
+    }
+
+}
@@ -0,0 +1,236 @@
+package ru.krsmon.bridge.service.pool;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.sshd.client.SshClient;
+import org.apache.sshd.client.session.ClientSession;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import ru.krsmon.bridge.model.Brand;
+import ru.krsmon.bridge.model.SurveyRequest;
+import ru.krsmon.bridge.service.cache.LatencyModel;
+import ru.krsmon.bridge.service.cache.LatencyModel.Kind;
+import ru.krsmon.bridge.service.metrics.SurveyMetrics;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.lang.System.currentTimeMillis;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.apache.sshd.core.CoreModuleProperties.HEARTBEAT_INTERVAL;
+import static org.apache.sshd.core.CoreModuleProperties.IDLE_TIMEOUT;
+import static ru.krsmon.bridge.model.Protocol.SSH;
+import static ru.krsmon.bridge.service.metrics.SurveyMetrics.Phase.AUTH;
+import static ru.krsmon.bridge.service.metrics.SurveyMetrics.Phase.CONNECT;
+
+/**
+ * Pool of authenticated SSH sessions keyed by ip:port:login and password hash over one shared {@link SshClient}.
+ * Request with other password never gets session authenticated by another caller.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SshSessionPool {
+    protected final SshClient client = SshClient.setUpDefaultClient();
+    protected final Map<String, Deque<PooledSession>> idleSessions = new ConcurrentHashMap<>();
+    protected final ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor();
+    protected final SurveyMetrics metrics;
+    protected final LatencyModel latency;
+    protected final MeterRegistry registry;
+    protected Semaphore capacity;
+
+    @Value("${server.tomcat.connection-timeout}")
+    private Integer timeout;
+
+    @Value("${bridge.ssh.pool.max-sessions}")
+    private Integer maxSessions;
+
+    @Value("${bridge.ssh.pool.idle-timeout}")
+    private Integer idleTimeout;
+
+    @Value("${bridge.ssh.pool.keepalive}")
+    private Integer keepalive;
+
+    @PostConstruct
+    public void start() {
+        capacity = new Semaphore(maxSessions);
+        HEARTBEAT_INTERVAL.set(client, Duration.ofSeconds(keepalive));
+        IDLE_TIMEOUT.set(client, Duration.ofSeconds(idleTimeout * 2L));
+        client.start();
+        Gauge.builder("survey.sessions.open", this, SshSessionPool::openSessions)
+                .description("Open router sessions, idle and borrowed.")
+                .tag("protocol", SSH.name())
+                .register(registry);
+        evictor.scheduleWithFixedDelay(this::evictIdle, keepalive, keepalive, SECONDS);
+        log.info("SSH: Session pool started, max sessions '%s'.".formatted(maxSessions));
+    }
+
+    @PreDestroy
+    public void stop() {
+        evictor.shutdownNow();
+        idleSessions.values().forEach(sessions -> sessions.forEach(PooledSession::close));
+        client.stop();
+    }
+
+    /**
+     * Borrow authenticated session, idle session of router is reused when it is still healthy
+     *
+     * @param request  креды точки
+     * @param brand    бренд роутера
+     * @param forceNew skip idle sessions and open new one
+     * @return session lease, close it to return session into pool
+     * @throws IOException connect or authentication failed, pool exhausted
+     */
+    @NonNull
+    public Lease borrow(@NonNull SurveyRequest request, @NonNull Brand brand, boolean forceNew) throws IOException {
+        final String key = request.sessionKey();
+        final Deque<PooledSession> sessions = idleSessions.computeIfAbsent(key, ignored -> new ConcurrentLinkedDeque<>());
+
+        PooledSession pooled;
+        while (!forceNew && (pooled = sessions.pollFirst()) != null) {
+            if (pooled.isHealthy()) return new Lease(key, pooled, true);
+            pooled.close();
+        }
+
+        acquirePermit();
+        ClientSession session = null;
+        try {
+            final String routerKey = request.routerKey();
+            session = metrics.time(CONNECT, brand, SSH, () -> latency.measure(routerKey, Kind.CONNECT, () -> client
+                    .connect(request.getLogin(), request.getIp(), request.getService())
+                    .verify(latency.timeout(routerKey, Kind.CONNECT))
+                    .getSession()));
+            session.addPasswordIdentity(request.getPassword());
+            final ClientSession connected = session;
+            metrics.time(AUTH, brand, SSH, () -> latency.measure(routerKey, Kind.AUTH,
+                    () -> connected.auth().verify(latency.timeout(routerKey, Kind.AUTH))));
+            log.info("SSH: New session to '%s:%s'.".formatted(request.getIp(), request.getService()));
+            return new Lease(key, new PooledSession(session), false);
+        } catch (IOException | RuntimeException ex) {
+            if (session != null) session.close(true);
+            capacity.release();
+            throw ex;
+        }
+    }
+
+    /**
+     * @return sessions holding pool capacity, idle and borrowed
+     */
+    public int openSessions() {
+        return capacity == null ? 0 : maxSessions - capacity.availablePermits();
+    }
+
+    private void acquirePermit() throws IOException {
+        if (capacity.tryAcquire()) return;
+        evictOldestIdle();
+        try {
+            if (!capacity.tryAcquire(timeout * 100L, MILLISECONDS))
+                throw new IOException("SSH session pool exhausted, max sessions '%s'.".formatted(maxSessions));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for SSH session.", ex);
+        }
+    }
+
+    private void evictOldestIdle() {
+        idleSessions.values().stream()
+                .map(Deque::peekLast)
+                .filter(Objects::nonNull)
+                .min((first, second) -> Long.compare(first.lastUsed, second.lastUsed))
+                .ifPresent(oldest -> {
+                    if (idleSessions.values().stream().anyMatch(sessions -> sessions.remove(oldest))) oldest.close();
+                });
+    }
+
+    private void evictIdle() {
+        try {
+            final long expiredAt = currentTimeMillis() - idleTimeout * 1000L;
+            idleSessions.values().forEach(sessions -> sessions.removeIf(pooled -> {
+                if (pooled.lastUsed >= expiredAt && pooled.isHealthy()) return false;
+                pooled.close();
+                return true;
+            }));
+            idleSessions.values().removeIf(Deque::isEmpty);
+        } catch (Exception ex) {
+            log.warn("SSH: Fail to evict idle sessions, message: '%s'".formatted(ex.getLocalizedMessage()));
+        }
+    }
+
+    protected class PooledSession {
+        private final ClientSession session;
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private volatile long lastUsed = currentTimeMillis();
+
+        private PooledSession(ClientSession session) {
+            this.session = session;
+        }
+
+        private boolean isHealthy() {
+            return !closed.get() && session.isOpen() && !session.isClosing() && session.isAuthenticated();
+        }
+
+        private void close() {
+            if (closed.compareAndSet(false, true)) {
+                session.close(true);
+                capacity.release();
+            }
+        }
+    }
+
+    public class Lease implements AutoCloseable {
+        private final String key;
+        private final PooledSession pooled;
+        private final boolean reused;
+        private boolean invalid;
+
+        private Lease(String key, PooledSession pooled, boolean reused) {
+            this.key = key;
+            this.pooled = pooled;
+            this.reused = reused;
+        }
+
+        @NonNull
+        public ClientSession session() {
+            return pooled.session;
+        }
+
+        /**
+         * @return session was taken from pool, handshake was skipped
+         */
+        public boolean isReused() {
+            return reused;
+        }
+
+        /**
+         * Mark session as broken, it will be closed instead of returning to pool
+         */
+        public void invalidate() {
+            invalid = true;
+        }
+
+        @Override
+        public void close() {
+            if (invalid || !pooled.isHealthy()) {
+                pooled.close();
+                return;
+            }
+            pooled.lastUsed = currentTimeMillis();
+            idleSessions.computeIfAbsent(key, ignored -> new ConcurrentLinkedDeque<>()).offerFirst(pooled);
+        }
+    }
+
+}
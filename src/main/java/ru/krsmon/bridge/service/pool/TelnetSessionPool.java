@@ -0,0 +1,293 @@
+package ru.krsmon.bridge.service.pool;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.sf.expectit.Expect;
+import net.sf.expectit.ExpectBuilder;
+import net.sf.expectit.ExpectIOException;
+import org.apache.commons.net.telnet.TelnetClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import ru.krsmon.bridge.model.Brand;
+import ru.krsmon.bridge.model.SurveyRequest;
+import ru.krsmon.bridge.service.cache.LatencyModel;
+import ru.krsmon.bridge.service.cache.LatencyModel.Kind;
+import ru.krsmon.bridge.service.metrics.SurveyMetrics;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.System.currentTimeMillis;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static net.sf.expectit.matcher.Matchers.anyString;
+import static net.sf.expectit.matcher.Matchers.contains;
+import static org.apache.commons.net.SocketClient.NETASCII_EOL;
+import static ru.krsmon.bridge.model.Protocol.TELNET;
+import static ru.krsmon.bridge.service.metrics.SurveyMetrics.Phase.CONNECT;
+import static ru.krsmon.bridge.service.metrics.SurveyMetrics.Phase.LOGIN;
+
+/**
+ * Pool of logged-in Telnet sessions keyed by ip:port:login and password hash,
+ * idle session is re-synced to router invite before reuse.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TelnetSessionPool {
+    private static final long DRAIN_TIMEOUT = 50;
+    protected final Map<String, Deque<PooledSession>> idleSessions = new ConcurrentHashMap<>();
+    protected final ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor();
+    protected final AtomicInteger openSessions = new AtomicInteger();
+    protected final SurveyMetrics metrics;
+    protected final LatencyModel latency;
+    protected final MeterRegistry registry;
+
+    @Getter
+    protected final AtomicLong hits = new AtomicLong();
+
+    @Getter
+    protected final AtomicLong misses = new AtomicLong();
+
+    @Value("${server.tomcat.connection-timeout}")
+    private Integer timeout;
+
+    @Value("${bridge.telnet.pool.idle-timeout}")
+    private Integer idleTimeout;
+
+    @Value("${bridge.telnet.pool.max-lifetime}")
+    private Integer maxLifetime;
+
+    @Value("${bridge.telnet.pool.resync-timeout}")
+    private Integer resyncTimeout;
+
+    @Value("${bridge.telnet.capture-size}")
+    private Integer captureSize;
+
+    @PostConstruct
+    public void start() {
+        FunctionCounter.builder("telnet.pool.hits", hits, AtomicLong::get)
+                .description("Telnet surveys served by pooled session.")
+                .register(registry);
+        FunctionCounter.builder("telnet.pool.misses", misses, AtomicLong::get)
+                .description("Telnet surveys that required new login.")
+                .register(registry);
+        Gauge.builder("survey.sessions.open", openSessions, AtomicInteger::get)
+                .description("Open router sessions, idle and borrowed.")
+                .tag("protocol", TELNET.name())
+                .register(registry);
+        evictor.scheduleWithFixedDelay(this::evictIdle, 30, 30, SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        evictor.shutdownNow();
+        idleSessions.values().forEach(sessions -> sessions.forEach(PooledSession::close));
+    }
+
+    /**
+     * Borrow logged-in session, idle session of router is reused after re-sync to invite
+     *
+     * @param request  креды точки
+     * @param brand    бренд роутера
+     * @param login    login dialog of router
+     * @param forceNew skip idle sessions and login again
+     * @return session lease, close it to return session into pool
+     * @throws IOException connect or login failed
+     */
+    @NonNull
+    public Lease borrow(@NonNull SurveyRequest request, @NonNull Brand brand,
+                        @NonNull Login login, boolean forceNew) throws IOException {
+        final String key = request.sessionKey();
+        final Deque<PooledSession> sessions = idleSessions.computeIfAbsent(key, ignored -> new ConcurrentLinkedDeque<>());
+
+        PooledSession pooled;
+        while (!forceNew && (pooled = sessions.pollFirst()) != null) {
+            if (pooled.isAlive() && pooled.resync()) {
+                hits.incrementAndGet();
+                return new Lease(key, pooled, true);
+            }
+            pooled.close();
+        }
+
+        misses.incrementAndGet();
+        final PooledSession created = new PooledSession(brand);
+        try {
+            final String routerKey = request.routerKey();
+            created.client.setDefaultTimeout(timeout * 1000);
+            created.client.setConnectTimeout((int) latency.timeout(routerKey, Kind.CONNECT));
+            metrics.time(CONNECT, brand, TELNET, () -> latency.measure(routerKey, Kind.CONNECT, () -> {
+                created.client.connect(request.getIp(), request.getService());
+                return created.expect = createExpect(created.client, created.capture);
+            }));
+            metrics.time(LOGIN, brand, TELNET, () -> latency.measure(routerKey, Kind.AUTH, () -> {
+                login.login(created.expect, request, brand);
+                return created.expect;
+            }));
+            return new Lease(key, created, false);
+        } catch (IOException | RuntimeException ex) {
+            created.close();
+            throw ex;
+        }
+    }
+
+    private void evictIdle() {
+        try {
+            final long now = currentTimeMillis();
+            idleSessions.values().forEach(sessions -> sessions.removeIf(pooled -> {
+                if (pooled.isAlive() && now - pooled.lastUsed < idleTimeout * 1000L) return false;
+                pooled.close();
+                return true;
+            }));
+            idleSessions.values().removeIf(Deque::isEmpty);
+        } catch (Exception ex) {
+            log.warn("TELNET: Fail to evict idle sessions, message: '%s'".formatted(ex.getLocalizedMessage()));
+        }
+    }
+
+    @NonNull
+    private Expect createExpect(@NonNull TelnetClient client, @NonNull CommandCapture capture) throws IOException {
+        return new ExpectBuilder()
+                .withOutput(client.getOutputStream())
+                .withInputs(client.getInputStream())
+                .withInputFilters(capture)
+                .withLineSeparator(NETASCII_EOL)
+                .withExceptionOnFailure()
+                .withCharset(UTF_8)
+                .build();
+    }
+
+    @FunctionalInterface
+    public interface Login {
+
+        /**
+         * Login dialog, must finish on router invite
+         *
+         * @param expect  expect of session
+         * @param request креды точки
+         * @param brand   бренд роутера
+         * @throws IOException login failed
+         */
+        void login(@NonNull Expect expect, @NonNull SurveyRequest request, @NonNull Brand brand) throws IOException;
+    }
+
+    protected class PooledSession {
+        private final TelnetClient client = new TelnetClient();
+        private final CommandCapture capture = new CommandCapture(captureSize);
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private final long createdAt = currentTimeMillis();
+        private final Brand brand;
+        private Expect expect;
+        private volatile long lastUsed = currentTimeMillis();
+
+        private PooledSession(Brand brand) {
+            this.brand = brand;
+            openSessions.incrementAndGet();
+        }
+
+        private boolean isAlive() {
+            return !closed.get()
+                    && client.isConnected()
+                    && client.isAvailable()
+                    && currentTimeMillis() - createdAt < maxLifetime * 1000L;
+        }
+
+        private boolean resync() {
+            try {
+                // Drop output left from previous survey, buffer is usually empty, so it is not waited
+                try {
+                    expect.withTimeout(DRAIN_TIMEOUT, MILLISECONDS).expect(anyString());
+                } catch (ExpectIOException ignored) {
+                }
+                // Then wait fresh invite
+                expect.sendLine();
+                expect.withTimeout(resyncTimeout, SECONDS).expect(contains(brand.getInvite()));
+                return true;
+            } catch (Exception ex) {
+                log.info("TELNET: Fail to re-sync pooled session, message: '%s'".formatted(ex.getLocalizedMessage()));
+                return false;
+            }
+        }
+
+        private void close() {
+            if (closed.compareAndSet(false, true)) {
+                openSessions.decrementAndGet();
+                try {
+                    if (expect != null) expect.close();
+                    if (client.isConnected()) client.disconnect();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    public class Lease implements AutoCloseable {
+        private final String key;
+        private final PooledSession pooled;
+        private final boolean reused;
+        private boolean invalid;
+
+        private Lease(String key, PooledSession pooled, boolean reused) {
+            this.key = key;
+            this.pooled = pooled;
+            this.reused = reused;
+        }
+
+        @NonNull
+        public Expect expect() {
+            return pooled.expect;
+        }
+
+        @NonNull
+        public CommandCapture capture() {
+            return pooled.capture;
+        }
+
+        /**
+         * @return session was taken from pool, login was skipped
+         */
+        public boolean isReused() {
+            return reused;
+        }
+
+        /**
+         * @return session line is still connected
+         */
+        public boolean isConnected() {
+            return pooled.client.isConnected() && pooled.client.isAvailable();
+        }
+
+        /**
+         * Mark session as broken, it will be disconnected instead of returning to pool
+         */
+        public void invalidate() {
+            invalid = true;
+        }
+
+        @Override
+        public void close() {
+            if (invalid || !pooled.isAlive()) {
+                pooled.close();
+                return;
+            }
+            pooled.lastUsed = currentTimeMillis();
+            idleSessions.computeIfAbsent(key, ignored -> new ConcurrentLinkedDeque<>()).offerFirst(pooled);
+        }
+    }
+
+}
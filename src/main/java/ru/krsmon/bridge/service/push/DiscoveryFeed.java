@@ -0,0 +1,151 @@
+package ru.krsmon.bridge.service.push;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.event.EventListener;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import ru.krsmon.bridge.external.zabbix.ZabbixSender;
+import ru.krsmon.bridge.external.zabbix.model.ZabbixSenderItem;
+import ru.krsmon.bridge.model.SurveyCompletedEvent;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.regex.Pattern;
+
+import static java.lang.System.currentTimeMillis;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static ru.krsmon.bridge.external.zabbix.model.ZabbixConstrains.DATA;
+import static ru.krsmon.bridge.external.zabbix.model.ZabbixConstrains.ITEM_DISCOVERY;
+
+/**
+ * Low-level discovery of router devices from survey discovery map, LLD is sent to trapper item
+ * only when discovered devices of router are changed. Trapper needs technical host name, so surveys
+ * without it (pull requests without host) are not discovered.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "bridge.discovery.enabled", havingValue = "true")
+public class DiscoveryFeed {
+    protected static final Pattern MAC_PATTERN = Pattern.compile("([0-9A-Fa-f]{2}:){5}[0-9A-Fa-f]{2}");
+    protected final ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
+    protected final Map<String, Pending> pending = new LinkedHashMap<>();
+    protected final ZabbixSender sender;
+    protected final ObjectMapper mapper;
+    protected final MeterRegistry registry;
+    protected Map<String, Sent> sent;
+    protected Counter unchanged;
+
+    @Value("${bridge.discovery.flush-interval}")
+    private Integer flushInterval;
+
+    @Value("${bridge.discovery.refresh-interval}")
+    private Integer refreshInterval;
+
+    @Value("${bridge.discovery.max-routers}")
+    private Integer maxRouters;
+
+    @PostConstruct
+    public void start() {
+        sent = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Sent> eldest) {
+                return size() > maxRouters;
+            }
+        };
+        unchanged = Counter.builder("discovery.unchanged")
+                .description("Surveys without changes of discovered devices.")
+                .register(registry);
+        executorService.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        executorService.shutdown();
+        flush();
+    }
+
+    /**
+     * Queue LLD of router if its discovered devices differ from last sent ones
+     */
+    @EventListener
+    public void onSurveyCompleted(@NonNull SurveyCompletedEvent event) {
+        final String host = event.request().getHost();
+        final Map<String, String> discovery = event.response().getDiscovery();
+        if (host == null || discovery == null || discovery.isEmpty()) return;
+
+        // Canonical order, so the same devices always give the same LLD and hash
+        final Map<String, String> devices = new TreeMap<>(discovery);
+        final String lld = toLld(devices);
+        final long hash = UUID.nameUUIDFromBytes(lld.getBytes(StandardCharsets.UTF_8)).getMostSignificantBits();
+        synchronized (pending) {
+            final Sent last = sent.get(host);
+            if (last != null && last.hash() == hash && currentTimeMillis() - last.sentAt() < refreshInterval * 1000L) {
+                unchanged.increment();
+                return;
+            }
+            sent.put(host, new Sent(hash, currentTimeMillis()));
+            pending.put(host, new Pending(lld, hash));
+        }
+    }
+
+    @NonNull
+    private String toLld(@NonNull Map<String, String> devices) {
+        final List<Map<String, String>> rows = devices.entrySet().stream()
+                .map(device -> MAC_PATTERN.matcher(device.getKey()).matches()
+                        ? Map.of("{#MAC}", device.getKey(), "{#IP}", device.getValue())
+                        : Map.of("{#KEY}", device.getKey(), "{#IP}", device.getValue()))
+                .toList();
+        try {
+            return mapper.writeValueAsString(Map.of(DATA, rows));
+        } catch (Exception ex) {
+            throw new IllegalStateException("Fail to write LLD.", ex);
+        }
+    }
+
+    private void flush() {
+        final Map<String, Pending> batch;
+        synchronized (pending) {
+            if (pending.isEmpty()) return;
+            batch = new LinkedHashMap<>(pending);
+            pending.clear();
+        }
+
+        final long clock = currentTimeMillis() / 1000;
+        final int processed = sender.send(batch.entrySet().stream()
+                .map(lld -> new ZabbixSenderItem(lld.getKey(), ITEM_DISCOVERY, lld.getValue().lld(), clock))
+                .toList());
+        if (processed < batch.size()) {
+            // Failed values are not known one by one, LLD of the whole batch is sent again on next survey
+            synchronized (pending) {
+                batch.forEach((host, lld) -> {
+                    final Sent last = sent.get(host);
+                    if (last != null && last.hash() == lld.hash()) sent.remove(host);
+                });
+            }
+            log.warn("ZABBIX: LLD of '%s' routers not processed, it will be sent again."
+                    .formatted(batch.size() - processed));
+        }
+        log.info("ZABBIX: Sent LLD of '%s' routers.".formatted(processed));
+    }
+
+    private record Pending(String lld, long hash) {
+    }
+
+    private record Sent(long hash, long sentAt) {
+    }
+
+}
@@ -0,0 +1,117 @@
+package ru.krsmon.bridge.service.push;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import ru.krsmon.bridge.external.zabbix.model.ZabbixHost;
+import ru.krsmon.bridge.external.zabbix.service.ZabbixService;
+import ru.krsmon.bridge.model.BatchSurveyRequest;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static ru.krsmon.bridge.external.zabbix.model.ZabbixConstrains.MACRO_PUSH;
+import static ru.krsmon.bridge.external.zabbix.model.ZabbixConstrains.NAME;
+
+/**
+ * Routers of push mode: JSON array of batch survey requests from config file and hosts with
+ * {@code {$BRIDGE.PUSH}} macro, value of macro is JSON of batch survey request.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "bridge.push.enabled", havingValue = "true")
+public class PushRegistry {
+    protected final ZabbixService zabbixService;
+    protected final ObjectMapper mapper;
+
+    @Value("${bridge.push.routers-file}")
+    private String routersFile;
+
+    @Value("${bridge.push.from-zabbix}")
+    private Boolean fromZabbix;
+
+    /**
+     * Load routers, zabbix host overrides router of file with the same host name
+     *
+     * @return map host/router, empty if zabbix is not available
+     */
+    @NonNull
+    public Optional<Map<String, Target>> load() {
+        final Optional<Map<ZabbixHost, String>> hosts = fromZabbix
+                ? zabbixService.getHostsByMacro(MACRO_PUSH)
+                : Optional.of(Map.of());
+        if (hosts.isEmpty()) return Optional.empty();
+
+        final Map<String, Target> targets = new HashMap<>(loadFile());
+        hosts.get().forEach((host, value) -> {
+            try {
+                final JsonNode request = mapper.readTree(value);
+                if (!(request instanceof ObjectNode node)) throw new IllegalArgumentException("Macro is not JSON object.");
+                if (!node.hasNonNull(NAME)) node.put(NAME, host.name());
+                targets.put(host.host(), new Target(host.host(), validate(node)));
+            } catch (Exception ex) {
+                log.warn("PUSH: Invalid macro of host '%s', message: '%s'".formatted(host.host(), ex.getLocalizedMessage()));
+            }
+        });
+        log.info("PUSH: Loaded '%s' routers.".formatted(targets.size()));
+        return Optional.of(targets);
+    }
+
+    @NonNull
+    private Map<String, Target> loadFile() {
+        final Map<String, Target> targets = new HashMap<>();
+        if (routersFile.isBlank()) return targets;
+        try {
+            for (JsonNode node : mapper.readTree(Files.readAllBytes(Path.of(routersFile)))) {
+                try {
+                    final String host = node.path(NAME).asText();
+                    targets.put(host, new Target(host, validate(node)));
+                } catch (Exception ex) {
+                    log.warn("PUSH: Invalid router in '%s', message: '%s'".formatted(routersFile, ex.getLocalizedMessage()));
+                }
+            }
+        } catch (Exception ex) {
+            log.warn("PUSH: Fail to read routers from '%s', message: '%s'".formatted(routersFile, ex.getLocalizedMessage()));
+        }
+        return targets;
+    }
+
+    @NonNull
+    private JsonNode validate(@NonNull JsonNode request) throws JsonProcessingException {
+        final BatchSurveyRequest parsed = mapper.treeToValue(request, BatchSurveyRequest.class);
+        if (parsed.getName() == null || parsed.getIp() == null || parsed.getBrand() == null || parsed.getProtocol() == null)
+            throw new IllegalArgumentException("Name, ip, brand and protocol are required.");
+        if (parsed.getDevices() == null) throw new IllegalArgumentException("Devices are required.");
+        return request;
+    }
+
+    /**
+     * Router of push mode
+     *
+     * @param host    technical name of zabbix host, values are sent to it
+     * @param request JSON of batch survey request
+     */
+    public record Target(String host, JsonNode request) {
+
+        /**
+         * @return new request for one survey, survey changes request so it is never reused
+         */
+        @NonNull
+        public BatchSurveyRequest newRequest(@NonNull ObjectMapper mapper) throws JsonProcessingException {
+            final BatchSurveyRequest survey = mapper.treeToValue(request, BatchSurveyRequest.class);
+            survey.setHost(host);
+            return survey;
+        }
+    }
+
+}
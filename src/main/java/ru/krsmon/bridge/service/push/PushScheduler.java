@@ -0,0 +1,219 @@
+package ru.krsmon.bridge.service.push;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import ru.krsmon.bridge.external.zabbix.ZabbixSender;
+import ru.krsmon.bridge.external.zabbix.model.ZabbixSenderItem;
+import ru.krsmon.bridge.model.BatchSurveyRequest;
+import ru.krsmon.bridge.model.Device;
+import ru.krsmon.bridge.model.SurveyResponse;
+import ru.krsmon.bridge.service.SurveyService;
+import ru.krsmon.bridge.service.pool.RouterWorkScheduler.Lane;
+import ru.krsmon.bridge.service.push.PushRegistry.Target;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static java.lang.System.currentTimeMillis;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.stream.Collectors.toSet;
+import static ru.krsmon.bridge.external.zabbix.model.ZabbixConstrains.ITEM_DEVICE_STATUS;
+import static ru.krsmon.bridge.external.zabbix.model.ZabbixConstrains.ITEM_SURVEY;
+
+/**
+ * Push mode: bridge surveys registered routers itself, each router once per interval at random offset,
+ * results are sent to zabbix trapper items in batches.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "bridge.push.enabled", havingValue = "true")
+public class PushScheduler {
+    protected final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2);
+    // Sending blocks on zabbix socket, it never holds threads of survey timers
+    protected final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor();
+    protected final Map<String, Schedule> schedules = new ConcurrentHashMap<>();
+    protected final Map<String, Long> allSentAt = new ConcurrentHashMap<>();
+    protected final Map<String, Map<String, Integer>> pushedCodes = new ConcurrentHashMap<>();
+    protected final List<ZabbixSenderItem> buffer = new ArrayList<>();
+    protected final PushRegistry pushRegistry;
+    protected final SurveyService surveyService;
+    protected final ZabbixSender sender;
+    protected final ObjectMapper mapper;
+    protected final MeterRegistry registry;
+    protected Semaphore budget;
+    protected Counter skipped;
+    protected Counter sent;
+    protected Counter dropped;
+
+    @Value("${bridge.push.interval}")
+    private Integer interval;
+
+    @Value("${bridge.push.refresh-interval}")
+    private Integer refreshInterval;
+
+    @Value("${bridge.push.max-concurrent}")
+    private Integer maxConcurrent;
+
+    @Value("${bridge.push.flush-interval}")
+    private Integer flushInterval;
+
+    @Value("${bridge.push.changes-only}")
+    private Boolean changesOnly;
+
+    @Value("${external.zabbix.sender.batch-size}")
+    private Integer batchSize;
+
+    @PostConstruct
+    public void start() {
+        budget = new Semaphore(maxConcurrent);
+        Gauge.builder("push.routers", schedules, Map::size)
+                .description("Routers surveyed by push mode.")
+                .register(registry);
+        skipped = Counter.builder("push.surveys.skipped")
+                .description("Push surveys skipped because concurrency budget is exhausted.")
+                .register(registry);
+        sent = Counter.builder("push.values.sent")
+                .description("Values processed by zabbix trapper.")
+                .register(registry);
+        dropped = Counter.builder("push.values.dropped")
+                .description("Values not processed by zabbix trapper.")
+                .register(registry);
+        scheduler.scheduleWithFixedDelay(this::refresh, 0, refreshInterval, SECONDS);
+        flusher.scheduleWithFixedDelay(this::flush, flushInterval, flushInterval, SECONDS);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        scheduler.shutdownNow();
+        flusher.shutdown();
+        // Flush in progress is completed, values queued after it are sent at last
+        flusher.awaitTermination(flushInterval, SECONDS);
+        flush();
+    }
+
+    /**
+     * Sync schedules with registry, new and changed routers are scheduled at random offset inside interval
+     */
+    private void refresh() {
+        try {
+            final var loaded = pushRegistry.load();
+            if (loaded.isEmpty()) {
+                log.warn("PUSH: Routers are not loaded, keep '%s' scheduled routers.".formatted(schedules.size()));
+                return;
+            }
+
+            final Map<String, Target> targets = loaded.get();
+            schedules.entrySet().removeIf(schedule -> {
+                final Target target = targets.get(schedule.getKey());
+                if (target != null && target.equals(schedule.getValue().target())) return false;
+                schedule.getValue().future().cancel(false);
+                allSentAt.remove(schedule.getKey());
+                pushedCodes.remove(schedule.getKey());
+                return true;
+            });
+            targets.forEach((host, target) -> schedules.computeIfAbsent(host, ignored -> new Schedule(target,
+                    scheduler.scheduleAtFixedRate(() -> survey(target),
+                            ThreadLocalRandom.current().nextLong(interval * 1000L), interval * 1000L, MILLISECONDS))));
+            log.info("PUSH: '%s' routers scheduled every '%s' sec.".formatted(schedules.size(), interval));
+        } catch (Exception ex) {
+            log.warn("PUSH: Fail to refresh routers, message: '%s'".formatted(ex.getLocalizedMessage()));
+        }
+    }
+
+    private void survey(@NonNull Target target) {
+        // Router is skipped this round instead of queueing, so late surveys never pile up
+        if (!budget.tryAcquire()) {
+            skipped.increment();
+            log.warn("PUSH: Survey of '%s' skipped, '%s' surveys in progress.".formatted(target.host(), maxConcurrent));
+            return;
+        }
+        try {
+            final BatchSurveyRequest request = target.newRequest(mapper);
+            surveyService.survey(request.getBrand(), request.getProtocol(), request, Lane.BACKGROUND)
+                    .whenComplete((response, ex) -> {
+                        budget.release();
+                        if (ex == null) enqueue(target, request, response);
+                        else log.warn("PUSH: Survey of '%s' failed, message: '%s'"
+                                .formatted(target.host(), ex.getLocalizedMessage()));
+                    });
+        } catch (Exception ex) {
+            budget.release();
+            log.warn("PUSH: Fail to start survey of '%s', message: '%s'".formatted(target.host(), ex.getLocalizedMessage()));
+        }
+    }
+
+    private void enqueue(@NonNull Target target, @NonNull BatchSurveyRequest request, @NonNull SurveyResponse response) {
+        final long clock = currentTimeMillis() / 1000;
+        final List<ZabbixSenderItem> items = new ArrayList<>();
+        try {
+            items.add(new ZabbixSenderItem(target.host(), ITEM_SURVEY, mapper.writeValueAsString(response), clock));
+        } catch (Exception ex) {
+            log.warn("PUSH: Fail to serialize survey of '%s', message: '%s'".formatted(target.host(), ex.getLocalizedMessage()));
+        }
+        // OFFLINE response has placeholders of all device keys, only devices of router are sent
+        final Set<String> keys = request.devices().stream().map(Device::getKey).collect(toSet());
+        // Changes-only mode sends statuses which differ from pushed ones, all statuses are resent once per refresh interval.
+        // Pushed code is compared, not time of change, survey may be served from cache or shared with other caller
+        final boolean isAll = !changesOnly || isAllDue(target.host());
+        final Map<String, Integer> pushed = pushedCodes.computeIfAbsent(target.host(), ignored -> new ConcurrentHashMap<>());
+        if (response.getResult() != null)
+            response.getResult().forEach((key, status) -> {
+                if (!keys.contains(key)) return;
+                final Integer previous = pushed.put(key, status.code());
+                if (isAll || previous == null || previous != status.code())
+                    items.add(new ZabbixSenderItem(
+                            target.host(), ITEM_DEVICE_STATUS.formatted(key), String.valueOf(status.code()), clock));
+            });
+
+        final boolean isFull;
+        synchronized (buffer) {
+            buffer.addAll(items);
+            isFull = buffer.size() >= batchSize;
+        }
+        if (isFull) flusher.execute(this::flush);
+    }
+
+    private boolean isAllDue(@NonNull String host) {
+        final long now = currentTimeMillis();
+        final Long sentAt = allSentAt.get(host);
+        if (sentAt != null && now - sentAt < refreshInterval * 1000L) return false;
+        allSentAt.put(host, now);
+        return true;
+    }
+
+    private void flush() {
+        final List<ZabbixSenderItem> batch;
+        synchronized (buffer) {
+            if (buffer.isEmpty()) return;
+            batch = new ArrayList<>(buffer);
+            buffer.clear();
+        }
+        final int processed = sender.send(batch);
+        sent.increment(processed);
+        dropped.increment(batch.size() - processed);
+        log.info("PUSH: Sent '%s' of '%s' values.".formatted(processed, batch.size()));
+    }
+
+    protected record Schedule(Target target, ScheduledFuture<?> future) {
+    }
+
+}
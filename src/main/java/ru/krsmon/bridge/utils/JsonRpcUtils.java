@@ -0,0 +1,163 @@
+package ru.krsmon.bridge.utils;
+
+import lombok.experimental.UtilityClass;
+import org.springframework.lang.NonNull;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Byte level reader of JSON-RPC envelope, string "result" is copied to output without materializing it on heap.
+ */
+@UtilityClass
+public class JsonRpcUtils {
+    private static final int MAX_FIELD_SIZE = 64 * 1024;
+
+    /**
+     * Copy decoded string "result" of JSON-RPC response into output
+     *
+     * @param input  response body
+     * @param output target, UTF-8 bytes of result are written
+     * @return count of written bytes
+     * @throws IOException response has "error", "result" is absent or is not a string
+     */
+    public static long copyStringResult(@NonNull InputStream input, @NonNull OutputStream output) throws IOException {
+        final PushbackInputStream in = new PushbackInputStream(input, 1);
+        String error = null;
+        long copied = -1;
+
+        expect(in, '{');
+        while (true) {
+            int ch = nextNonSpace(in);
+            if (ch == '}') break;
+            if (ch == ',') continue;
+            if (ch != '"') throw new IOException("Unexpected char '%s' in JSON-RPC response.".formatted((char) ch));
+
+            final ByteArrayOutputStream key = new ByteArrayOutputStream();
+            copyString(in, key, MAX_FIELD_SIZE);
+            expect(in, ':');
+            ch = nextNonSpace(in);
+
+            if ("result".equals(key.toString(UTF_8))) {
+                if (ch != '"') throw new IOException("JSON-RPC result is not a string.");
+                copied = copyString(in, output, Long.MAX_VALUE);
+            } else {
+                final ByteArrayOutputStream value = new ByteArrayOutputStream();
+                copyValue(in, ch, value);
+                if ("error".equals(key.toString(UTF_8))) error = value.toString(UTF_8);
+            }
+        }
+
+        if (error != null) throw new IOException("JSON-RPC error: %s".formatted(error));
+        if (copied < 0) throw new IOException("JSON-RPC result is absent.");
+        return copied;
+    }
+
+    /**
+     * Decode JSON string, opening quote is already read
+     */
+    private static long copyString(@NonNull InputStream in, @NonNull OutputStream out, long limit) throws IOException {
+        long written = 0;
+        int ch;
+        while ((ch = read(in)) != '"') {
+            if (ch == '\\') {
+                ch = read(in);
+                switch (ch) {
+                    case 'n' -> ch = '\n';
+                    case 'r' -> ch = '\r';
+                    case 't' -> ch = '\t';
+                    case 'b' -> ch = '\b';
+                    case 'f' -> ch = '\f';
+                    case 'u' -> {
+                        int codePoint = readHex(in);
+                        if (Character.isHighSurrogate((char) codePoint)) {
+                            if (read(in) != '\\' || read(in) != 'u')
+                                throw new IOException("Invalid surrogate pair in JSON-RPC response.");
+                            codePoint = Character.toCodePoint((char) codePoint, (char) readHex(in));
+                        }
+                        final byte[] bytes = new String(Character.toChars(codePoint)).getBytes(UTF_8);
+                        out.write(bytes);
+                        written += bytes.length;
+                        continue;
+                    }
+                    default -> {
+                        // '"', '\\' and '/' are written as is
+                    }
+                }
+            }
+            out.write(ch);
+            if (++written > limit) throw new IOException("JSON-RPC field exceeds '%s' bytes.".formatted(limit));
+        }
+        return written;
+    }
+
+    /**
+     * Capture raw JSON value (object, array, string or literal), first char is already read
+     */
+    private static void copyValue(@NonNull PushbackInputStream in, int first, @NonNull ByteArrayOutputStream out)
+            throws IOException {
+        int depth = 0;
+        int ch = first;
+        while (true) {
+            if (out.size() > MAX_FIELD_SIZE) throw new IOException("JSON-RPC field exceeds '%s' bytes.".formatted(MAX_FIELD_SIZE));
+            if (ch == '"') {
+                out.write(ch);
+                while ((ch = read(in)) != '"') {
+                    out.write(ch);
+                    if (ch == '\\') out.write(read(in));
+                }
+            } else if (ch == '{' || ch == '[') {
+                depth++;
+            } else if (ch == '}' || ch == ']') {
+                depth--;
+            } else if (depth == 0 && (ch == ',' || Character.isWhitespace(ch))) {
+                in.unread(ch);
+                return;
+            }
+            if (depth < 0) {
+                // End of envelope after literal value
+                in.unread(ch);
+                return;
+            }
+            out.write(ch);
+            if (depth == 0 && (ch == '"' || ch == '}' || ch == ']')) return;
+            ch = read(in);
+        }
+    }
+
+    private static int readHex(@NonNull InputStream in) throws IOException {
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+            final int digit = Character.digit(read(in), 16);
+            if (digit < 0) throw new IOException("Invalid unicode escape in JSON-RPC response.");
+            value = value * 16 + digit;
+        }
+        return value;
+    }
+
+    private static void expect(@NonNull InputStream in, int expected) throws IOException {
+        final int ch = nextNonSpace(in);
+        if (ch != expected)
+            throw new IOException("Expected '%s' but found '%s' in JSON-RPC response.".formatted((char) expected, (char) ch));
+    }
+
+    private static int nextNonSpace(@NonNull InputStream in) throws IOException {
+        int ch;
+        do {
+            ch = read(in);
+        } while (Character.isWhitespace(ch));
+        return ch;
+    }
+
+    private static int read(@NonNull InputStream in) throws IOException {
+        final int ch = in.read();
+        if (ch < 0) throw new EOFException("Unexpected end of JSON-RPC response.");
+        return ch;
+    }
+
+}
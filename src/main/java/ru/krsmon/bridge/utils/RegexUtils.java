@@ -7,45 +7,156 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.regex.Pattern;
 
-import static java.lang.Integer.parseInt;
+import static java.util.Objects.nonNull;
 
 @Slf4j
 @UtilityClass
 public class RegexUtils {
     private static final Pattern IP_FIND = Pattern.compile("((\\d{1,3}\\.){3}\\d{1,3})");
-    private static final Pattern PACKET_LOSS = Pattern.compile("[\\s|=]?(\\d{1,3})%");
-    private static final Pattern MAC_FIND = Pattern.compile("((\\w{2}:){5}\\w{2})");
-    private static final String PATTERN_REPLACE = "[^0-9]";
+    private static final int MAC_LENGTH = 17;
     public static final String NOT_RECOGNIZED = "fail: response not recognized";
+    public static final String PING_BLOCK_BEGIN = "@@PING ";
+    public static final String PING_BLOCK_END = "@@END";
+    public static final String PING_BATCH_DONE = "@@DONE";
 
-    public static Map<String, String> getArpMap(@NonNull String log) {
+    /**
+     * Parse ARP table, every line with ip and mac gives pair mac/ip, first pair of mac wins.
+     * Single pass over output without regex and line substrings
+     *
+     * @param log output of arp command of any brand
+     * @return map mac (upper case)/ip
+     */
+    public static Map<String, String> getArpMap(@NonNull CharSequence log) {
         final HashMap<String, String> result = new HashMap<>();
+        final int length = log.length();
+        int lineStart = 0;
+        while (lineStart <= length) {
+            int lineEnd = lineStart;
+            while (lineEnd < length && log.charAt(lineEnd) != '\n') lineEnd++;
 
-        for (var line : log.split("\n")) {
-            var ipMatcher = IP_FIND.matcher(line);
-            var macMatcher = MAC_FIND.matcher(line);
-
-            if (ipMatcher.find() && macMatcher.find())
-                // Fix duplicate pair
-                result.putIfAbsent(macMatcher.group(0).toUpperCase(), ipMatcher.group(0));
+            int ipStart = -1;
+            int ipEnd = -1;
+            for (int i = lineStart; i < lineEnd && ipEnd < 0; i++) {
+                ipEnd = matchIp(log, i, lineEnd);
+                ipStart = i;
+            }
+            if (ipEnd > 0) {
+                for (int i = lineStart; i + MAC_LENGTH <= lineEnd; i++) {
+                    if (matchMac(log, i)) {
+                        // Fix duplicate pair
+                        result.putIfAbsent(toUpperMac(log, i), log.subSequence(ipStart, ipEnd).toString());
+                        break;
+                    }
+                }
+            }
+            lineStart = lineEnd + 1;
         }
         return result;
     }
 
-    public static Map.Entry<Boolean, String> toPingResult(@NonNull String logs) {
-        try {
-            for (var line : logs.split("\n")) {
-                var matcher = PACKET_LOSS.matcher(line);
-                if (matcher.find()) {
-                    int loss = parseInt(matcher.group(0).replaceAll(PATTERN_REPLACE, ""));
-                    return Map.entry(loss != 100, "packet loss %s%s".formatted(loss, "%"));
+    /**
+     * Parse packet loss of ping summary (busybox, iputils, mikrotik): first '%' preceded by digit,
+     * loss is up to 3 digits before it
+     *
+     * @param logs output of ping
+     * @return success (loss below 100%)/description
+     */
+    public static Map.Entry<Boolean, String> toPingResult(@NonNull CharSequence logs) {
+        final int length = logs.length();
+        for (int i = 1; i < length; i++) {
+            if (logs.charAt(i) != '%' || !isDigit(logs.charAt(i - 1))) continue;
+
+            int from = i - 1;
+            while (from > i - 3 && from > 0 && isDigit(logs.charAt(from - 1))) from--;
+            int loss = 0;
+            for (int j = from; j < i; j++) loss = loss * 10 + logs.charAt(j) - '0';
+            return Map.entry(loss != 100, "packet loss %s%s".formatted(loss, "%"));
+        }
+
+        log.warn("Parse response of ping failed, response not recognized: '%s'".formatted(logs));
+        return Map.entry(false, NOT_RECOGNIZED);
+    }
+
+    /**
+     * Split output of batch ping into ping results of each ip, block of ip starts with
+     * {@link #PING_BLOCK_BEGIN} and ip, ends with {@link #PING_BLOCK_END}, echo of command is skipped
+     *
+     * @param logs output of batch ping
+     * @return ping results by ip
+     */
+    public static Map<String, Map.Entry<Boolean, String>> toPingResults(@NonNull String logs) {
+        final HashMap<String, Map.Entry<Boolean, String>> result = new HashMap<>();
+        String ip = null;
+        StringBuilder block = new StringBuilder();
+        for (var rawLine : logs.split("\n")) {
+            var line = rawLine.strip();
+            if (line.startsWith(PING_BLOCK_BEGIN)) {
+                var candidate = line.substring(PING_BLOCK_BEGIN.length()).strip();
+                if (IP_FIND.matcher(candidate).matches()) {
+                    ip = candidate;
+                    block = new StringBuilder();
                 }
+            } else if (nonNull(ip) && line.startsWith(PING_BLOCK_END)) {
+                result.put(ip, toPingResult(block));
+                ip = null;
+            } else if (nonNull(ip)) {
+                block.append(line).append('\n');
+            }
+        }
+
+        // Output is cut before end of block
+        if (nonNull(ip)) result.put(ip, toPingResult(block));
+        return result;
+    }
+
+    /**
+     * Match of {@link #IP_FIND} at position: three groups of 1-3 digits with dot, then greedy 1-3 digits
+     *
+     * @return end of match or -1
+     */
+    private static int matchIp(@NonNull CharSequence text, int start, int end) {
+        int pos = start;
+        for (int group = 0; group < 4; group++) {
+            int digits = 0;
+            while (pos < end && isDigit(text.charAt(pos))) {
+                pos++;
+                digits++;
+                if (group == 3 && digits == 3) return pos;
             }
+            if (digits == 0 || digits > 3) return -1;
+            if (group == 3) return pos;
+            if (pos >= end || text.charAt(pos) != '.') return -1;
+            pos++;
+        }
+        return -1;
+    }
+
+    /**
+     * Match of MAC at position: six groups of 2 word chars separated by colon
+     */
+    private static boolean matchMac(@NonNull CharSequence text, int start) {
+        for (int i = 0; i < MAC_LENGTH; i++) {
+            final char ch = text.charAt(start + i);
+            if (i % 3 == 2 ? ch != ':' : !isWord(ch)) return false;
+        }
+        return true;
+    }
 
-            log.warn("Parse response of ping failed, response not recognized: '%s'".formatted(logs));
-            return Map.entry(false, NOT_RECOGNIZED);
-        } catch (Exception exception) {
-            return Map.entry(false, "fail: message '%s'".formatted(exception.getLocalizedMessage()));
+    @NonNull
+    private static String toUpperMac(@NonNull CharSequence text, int start) {
+        final char[] mac = new char[MAC_LENGTH];
+        for (int i = 0; i < MAC_LENGTH; i++) {
+            final char ch = text.charAt(start + i);
+            mac[i] = ch >= 'a' && ch <= 'z' ? (char) (ch - 32) : ch;
         }
+        return new String(mac);
+    }
+
+    private static boolean isDigit(char ch) {
+        return ch >= '0' && ch <= '9';
+    }
+
+    private static boolean isWord(char ch) {
+        return isDigit(ch) || ch >= 'a' && ch <= 'z' || ch >= 'A' && ch <= 'Z' || ch == '_';
     }
 }
@@ -0,0 +1,125 @@
+package ru.krsmon.bridge.external.telegram;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.telegram.telegrambots.bots.DefaultBotOptions;
+import org.telegram.telegrambots.bots.TelegramLongPollingBot;
+import org.telegram.telegrambots.meta.api.objects.Update;
+import ru.krsmon.bridge.external.telegram.TelegramStub.Sent;
+import java.util.List;
+import java.util.Set;
+
+import static java.lang.System.currentTimeMillis;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BotManagerTest {
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private TelegramStub telegram;
+    private TelegramLongPollingBot bot;
+    private BotManager manager;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        telegram = new TelegramStub();
+        final DefaultBotOptions options = new DefaultBotOptions();
+        options.setBaseUrl(telegram.baseUrl());
+        bot = new TelegramLongPollingBot(options, "token") {
+            @Override
+            public String getBotUsername() {
+                return "stub";
+            }
+
+            @Override
+            public void onUpdateReceived(Update update) {
+            }
+        };
+        manager = new BotManager(Set.of(bot), registry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        manager.stop();
+        telegram.close();
+    }
+
+    @Test
+    void messagesArePacedByTokenBucket() throws Exception {
+        start(5.0, 2, 100);
+        final long startedAt = currentTimeMillis();
+        for (long chatId = 1; chatId <= 6; chatId++) assertTrue(manager.send(bot, chatId, "message " + chatId));
+
+        final List<Sent> sent = telegram.await(6, 5_000);
+        assertEquals(6, sent.size());
+        // Burst goes at once, the rest is sent by one per 200 ms
+        assertTrue(sent.get(1).at() - startedAt < 500, "Burst is delayed.");
+        assertTrue(sent.get(5).at() - sent.get(1).at() >= 600, "Messages after burst are not paced.");
+    }
+
+    @Test
+    void messagesToChatAreMergedWhileWaiting() throws Exception {
+        start(1.0, 1, 100);
+        pause(500);
+        manager.send(bot, 1, "first");
+        manager.send(bot, 1, "second");
+        manager.send(bot, 2, "other");
+
+        final List<Sent> sent = telegram.await(2, 3_000);
+        assertEquals(List.of("first\n\nsecond", "other"), sent.stream().map(Sent::text).toList());
+        assertEquals(1, registry.get("telegram.merged").counter().count());
+    }
+
+    @Test
+    void messageToNewChatIsDroppedWhenQueueIsFull() throws Exception {
+        start(10.0, 10, 2);
+        pause(500);
+        assertTrue(manager.send(bot, 1, "first"));
+        assertTrue(manager.send(bot, 2, "second"));
+        assertFalse(manager.send(bot, 3, "third"));
+        // Queued chat still gets the message
+        assertTrue(manager.send(bot, 1, "more"));
+
+        final List<Sent> sent = telegram.await(2, 3_000);
+        Thread.sleep(300);
+        assertEquals(2, sent.size());
+        assertEquals(1, registry.get("telegram.dropped").counter().count());
+    }
+
+    @Test
+    void rejectedMessageIsQueuedAgainAfterRetryAfter() throws Exception {
+        telegram.tooManyRequests(1);
+        start(1.0, 1, 100);
+        final long startedAt = currentTimeMillis();
+        manager.send(bot, 1, "first");
+        // Rejected message is queued again while sending is paused, this one is merged into it
+        Thread.sleep(300);
+        manager.send(bot, 1, "second");
+
+        final List<Sent> sent = telegram.await(1, 5_000);
+        assertEquals(1, sent.size());
+        assertEquals("first\n\nsecond", sent.get(0).text());
+        assertTrue(sent.get(0).at() - startedAt >= 1_000, "Sending is not paused for retry_after.");
+        assertEquals(0, registry.get("telegram.dropped").counter().count());
+    }
+
+    private void start(double rate, int burst, int maxQueued) {
+        ReflectionTestUtils.setField(manager, "rate", rate);
+        ReflectionTestUtils.setField(manager, "burst", burst);
+        ReflectionTestUtils.setField(manager, "maxQueued", maxQueued);
+        manager.start();
+    }
+
+    /**
+     * Pause drain, so messages sent meanwhile wait in queue together
+     */
+    private void pause(long millis) {
+        synchronized (manager.outgoing) {
+            manager.pausedUntil = currentTimeMillis() + millis;
+        }
+    }
+
+}
@@ -0,0 +1,109 @@
+package ru.krsmon.bridge.external.telegram;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+
+/**
+ * Local HTTP stand-in of telegram bot API: keeps sent messages, answers sendMessage with 429 when asked to
+ */
+public class TelegramStub implements AutoCloseable {
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final List<Sent> sent = new CopyOnWriteArrayList<>();
+    private final Queue<Integer> retryAfter = new ConcurrentLinkedQueue<>();
+    private final HttpServer server;
+
+    public TelegramStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    /**
+     * Base url of bot options, token and method are appended by bot
+     */
+    public String baseUrl() {
+        return "http://127.0.0.1:%s/bot".formatted(server.getAddress().getPort());
+    }
+
+    /**
+     * Next sendMessage is answered by 429 Too Many Requests
+     */
+    public void tooManyRequests(int retryAfterSeconds) {
+        retryAfter.add(retryAfterSeconds);
+    }
+
+    /**
+     * Messages accepted by stub
+     */
+    public List<Sent> sent() {
+        return sent;
+    }
+
+    /**
+     * Wait for accepted messages
+     */
+    public List<Sent> await(int count, long timeoutMillis) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + timeoutMillis;
+        while (sent.size() < count && System.currentTimeMillis() < deadline) Thread.sleep(20);
+        return sent;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        final String path = exchange.getRequestURI().getPath();
+        final String method = path.substring(path.lastIndexOf('/') + 1).toLowerCase(Locale.ROOT);
+        final byte[] request = exchange.getRequestBody().readAllBytes();
+
+        int code = 200;
+        String response = "{\"ok\":true,\"result\":true}";
+        if ("sendmessage".equals(method)) {
+            final JsonNode body = mapper.readTree(request);
+            final Integer retry = retryAfter.poll();
+            if (retry != null) {
+                code = 429;
+                response = """
+                        {"ok":false,"error_code":429,"description":"Too Many Requests: retry after %s",\
+                        "parameters":{"retry_after":%s}}""".formatted(retry, retry);
+            } else {
+                sent.add(new Sent(body.path("chat_id").asLong(), body.path("text").asText(), System.currentTimeMillis()));
+                response = """
+                        {"ok":true,"result":{"message_id":%s,"date":0,"chat":{"id":%s,"type":"private"},"text":"ok"}}"""
+                        .formatted(sent.size(), body.path("chat_id").asLong());
+            }
+        }
+
+        final byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Message accepted by stub
+     *
+     * @param at time of receiving in millis
+     */
+    public record Sent(long chatId, String text, long at) {
+    }
+
+}
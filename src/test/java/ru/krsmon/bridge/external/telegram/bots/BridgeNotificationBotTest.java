@@ -0,0 +1,96 @@
+package ru.krsmon.bridge.external.telegram.bots;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.krsmon.bridge.external.telegram.BotManager;
+import ru.krsmon.bridge.external.telegram.TelegramStub;
+import ru.krsmon.bridge.external.telegram.TelegramStub.Sent;
+import ru.krsmon.bridge.model.Brand;
+import ru.krsmon.bridge.model.DeviceState;
+import ru.krsmon.bridge.model.DeviceStateChangedEvent;
+import ru.krsmon.bridge.model.DeviceStateChangedEvent.Change;
+import ru.krsmon.bridge.model.Protocol;
+import ru.krsmon.bridge.model.SurveyRequest;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static ru.krsmon.bridge.model.DeviceStatus.Status.OFFLINE;
+import static ru.krsmon.bridge.model.DeviceStatus.Status.ONLINE;
+
+class BridgeNotificationBotTest {
+    private TelegramStub telegram;
+    private BridgeNotificationBot bot;
+    private BotManager manager;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        telegram = new TelegramStub();
+        // Bot gets manager lazily, like in context where manager depends on all bots
+        final DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+        bot = new BridgeNotificationBot(null, beanFactory.getBeanProvider(BotManager.class));
+        ReflectionTestUtils.setField(bot, "botUsername", "stub");
+        ReflectionTestUtils.setField(bot, "botToken", "token");
+        ReflectionTestUtils.setField(bot, "adminId", 0L);
+        ReflectionTestUtils.setField(bot, "baseUrl", telegram.baseUrl());
+        ReflectionTestUtils.setField(bot, "notifyChats", List.of(1L, 2L));
+        ReflectionTestUtils.setField(bot, "digestWindow", 1);
+        ReflectionTestUtils.setField(bot, "digestMaxWindow", 10);
+        ReflectionTestUtils.setField(bot, "digestMaxLines", 2);
+
+        manager = new BotManager(Set.of(bot), new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(manager, "rate", 10.0);
+        ReflectionTestUtils.setField(manager, "burst", 5);
+        ReflectionTestUtils.setField(manager, "maxQueued", 100);
+        beanFactory.registerSingleton("botManager", manager);
+        manager.start();
+        bot.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        bot.stop();
+        manager.stop();
+        telegram.close();
+    }
+
+    @Test
+    void transitionsAreSentAsOneDigestPerChat() throws Exception {
+        bot.onDeviceStateChanged(event(1, "DVR1", ONLINE.getCode(), OFFLINE.getCode()));
+        bot.onDeviceStateChanged(event(2, "DVR1", ONLINE.getCode(), OFFLINE.getCode()));
+        bot.onDeviceStateChanged(event(3, "CAM1", OFFLINE.getCode(), ONLINE.getCode()));
+        bot.onDeviceStateChanged(event(4, "CAM1", ONLINE.getCode(), OFFLINE.getCode()));
+        // Device flapped back inside window is not reported
+        bot.onDeviceStateChanged(event(4, "CAM1", OFFLINE.getCode(), ONLINE.getCode()));
+        // First survey of device is not a transition
+        bot.onDeviceStateChanged(new DeviceStateChangedEvent(Brand.ASUS, Protocol.SSH, request(5), List.of(
+                new Change("DVR1", null, new DeviceState(OFFLINE.getCode(), "10.0.5.10", 1, 1)))));
+
+        final List<Sent> sent = telegram.await(2, 5_000);
+        assertEquals(Set.of(1L, 2L), Set.of(sent.get(0).chatId(), sent.get(1).chatId()));
+        assertEquals("""
+                OFFLINE: 2, ONLINE: 1
+                OFFLINE Router 1 (10.0.0.1) DVR1
+                OFFLINE Router 2 (10.0.0.2) DVR1
+                ... and 1 more""", sent.get(0).text());
+    }
+
+    private static DeviceStateChangedEvent event(int router, String key, int from, int to) {
+        return new DeviceStateChangedEvent(Brand.ASUS, Protocol.SSH, request(router), List.of(new Change(key,
+                new DeviceState(from, "10.0.%s.10".formatted(router), 0, 0),
+                new DeviceState(to, "10.0.%s.10".formatted(router), 1, 1))));
+    }
+
+    private static SurveyRequest request(int router) {
+        final SurveyRequest request = new SurveyRequest();
+        request.setName("Router " + router);
+        request.setIp("10.0.0." + router);
+        request.setService(22);
+        return request;
+    }
+
+}
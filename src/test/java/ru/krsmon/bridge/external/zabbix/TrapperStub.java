@@ -0,0 +1,131 @@
+package ru.krsmon.bridge.external.zabbix;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Function;
+import java.util.stream.StreamSupport;
+
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+
+/**
+ * Local TCP stand-in of zabbix trapper: reads sender packets, keeps received batches and answers with given body
+ */
+public class TrapperStub implements AutoCloseable {
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final List<JsonNode> batches = new CopyOnWriteArrayList<>();
+    private final ServerSocket server;
+    private volatile CountDownLatch gate = new CountDownLatch(0);
+    private volatile Function<JsonNode, byte[]> responder = TrapperStub::processed;
+
+    public TrapperStub() throws IOException {
+        server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        final Thread acceptor = new Thread(this::accept, "trapper-stub");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Hold answers till {@link #release()}, like trapper under load
+     */
+    public void hold() {
+        gate = new CountDownLatch(1);
+    }
+
+    public void release() {
+        gate.countDown();
+    }
+
+    /**
+     * Answer with raw bytes instead of zabbix packet
+     */
+    public void respondRaw(Function<JsonNode, byte[]> responder) {
+        this.responder = responder;
+    }
+
+    /**
+     * Answer with zabbix packet of given JSON body
+     */
+    public void respond(Function<JsonNode, String> body) {
+        this.responder = batch -> packet(body.apply(batch));
+    }
+
+    public int port() {
+        return server.getLocalPort();
+    }
+
+    public List<JsonNode> batches() {
+        return batches;
+    }
+
+    /**
+     * Values of all received batches
+     */
+    public List<JsonNode> values() {
+        return batches.stream().flatMap(batch -> StreamSupport.stream(batch.path("data").spliterator(), false)).toList();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+    }
+
+    private void accept() {
+        while (!server.isClosed()) {
+            try {
+                final Socket socket = server.accept();
+                final Thread handler = new Thread(() -> handle(socket), "trapper-stub-connection");
+                handler.setDaemon(true);
+                handler.start();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void handle(Socket socket) {
+        try (socket) {
+            final DataInputStream in = new DataInputStream(socket.getInputStream());
+            final byte[] header = new byte[13];
+            in.readFully(header);
+            final int length = ByteBuffer.wrap(header, 5, 4).order(LITTLE_ENDIAN).getInt();
+            final byte[] body = new byte[length];
+            in.readFully(body);
+            final JsonNode batch = mapper.readTree(body);
+            batches.add(batch);
+            gate.await();
+
+            final OutputStream out = socket.getOutputStream();
+            out.write(responder.apply(batch));
+            out.flush();
+        } catch (IOException | InterruptedException ignored) {
+        }
+    }
+
+    private static byte[] processed(JsonNode batch) {
+        final int size = batch.path("data").size();
+        return packet("""
+                {"response":"success","info":"processed: %s; failed: 0; total: %s; seconds spent: 0.000055"}"""
+                .formatted(size, size));
+    }
+
+    public static byte[] packet(String json) {
+        final byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(13 + body.length).order(LITTLE_ENDIAN)
+                .put(new byte[]{'Z', 'B', 'X', 'D', 0x01})
+                .putInt(body.length)
+                .putInt(0)
+                .put(body)
+                .array();
+    }
+
+}
@@ -0,0 +1,91 @@
+package ru.krsmon.bridge.external.zabbix;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.krsmon.bridge.external.zabbix.model.ZabbixSenderItem;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ZabbixSenderTest {
+    private TrapperStub trapper;
+    private ZabbixSender sender;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        trapper = new TrapperStub();
+        sender = sender(trapper.port(), 2);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        trapper.close();
+    }
+
+    @Test
+    void valuesAreSentInBatches() {
+        final List<ZabbixSenderItem> items = items(5);
+
+        assertEquals(5, sender.send(items));
+        assertEquals(3, trapper.batches().size());
+        assertEquals("sender data", trapper.batches().get(0).path("request").asText());
+        assertEquals(items.get(4).key(), trapper.values().get(4).path("key").asText());
+        assertEquals(items.get(4).clock(), trapper.values().get(4).path("clock").asLong());
+    }
+
+    @Test
+    void partlyFailedBatchCountsProcessedOnly() {
+        trapper.respond(batch -> """
+                {"response":"success","info":"processed: 1; failed: 1; total: 2; seconds spent: 0.000055"}""");
+
+        assertEquals(2, sender.send(items(4)));
+    }
+
+    @Test
+    void rejectedBatchIsNotProcessed() {
+        trapper.respond(batch -> """
+                {"response":"failed","info":"host is not monitored"}""");
+
+        assertEquals(0, sender.send(items(3)));
+        assertEquals(2, trapper.batches().size());
+    }
+
+    @Test
+    void answerOfOtherProtocolIsNotProcessed() {
+        trapper.respondRaw(batch -> "HTTP/1.1 400 Bad Request\r\n\r\n".getBytes());
+
+        assertEquals(0, sender.send(items(1)));
+    }
+
+    @Test
+    void unavailableTrapperIsNotProcessed() throws IOException {
+        final int port;
+        try (ServerSocket closed = new ServerSocket(0)) {
+            port = closed.getLocalPort();
+        }
+
+        assertEquals(0, sender(port, 2).send(items(3)));
+    }
+
+    static ZabbixSender sender(int port, int batchSize) {
+        final ZabbixSender sender = new ZabbixSender(new ObjectMapper());
+        ReflectionTestUtils.setField(sender, "host", "127.0.0.1");
+        ReflectionTestUtils.setField(sender, "port", port);
+        ReflectionTestUtils.setField(sender, "timeout", 2);
+        ReflectionTestUtils.setField(sender, "batchSize", batchSize);
+        return sender;
+    }
+
+    private static List<ZabbixSenderItem> items(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> new ZabbixSenderItem("router-1", "bridge.device.status[DVR%s]".formatted(i), "1", 1700000000L + i))
+                .toList();
+    }
+
+}
@@ -0,0 +1,121 @@
+package ru.krsmon.bridge.external.zabbix.service.impl;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.StringJoiner;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.stream.IntStream;
+
+import static java.util.stream.Collectors.toMap;
+import static java.util.stream.StreamSupport.stream;
+import static okhttp3.MediaType.get;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ZabbixServiceImplTest {
+    private static final int HOSTS = 5;
+    private final ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build();
+    private final List<JsonNode> requests = new CopyOnWriteArrayList<>();
+    private Function<JsonNode, String> answer;
+    private ZabbixServiceImpl service;
+
+    @BeforeEach
+    void setUp() {
+        answer = this::hosts;
+        final Interceptor zabbix = chain -> {
+            final Buffer body = new Buffer();
+            chain.request().body().writeTo(body);
+            final JsonNode request = mapper.readTree(body.readByteArray());
+            requests.add(request);
+            final String result = answer.apply(request);
+            if (result == null) throw new IOException("Connection reset.");
+            return new Response.Builder()
+                    .request(chain.request())
+                    .protocol(Protocol.HTTP_1_1)
+                    .code(200)
+                    .message("OK")
+                    .body(ResponseBody.create("""
+                            {"jsonrpc":"2.0","result":%s,"id":1}""".formatted(result), get("application/json")))
+                    .build();
+        };
+        service = new ZabbixServiceImpl(new OkHttpClient.Builder().addInterceptor(zabbix).build(), mapper);
+        service.zabbixUrl = "http://zabbix.local/api_jsonrpc.php";
+        service.apiToken = "token";
+        service.batchSize = 2;
+        service.exportChunkSize = 2;
+        service.init();
+    }
+
+    @Test
+    void allHostIdsArePagedByIds() {
+        final Optional<Map<String, Integer>> hostIds = service.getAllHostIds();
+
+        assertEquals(Optional.of(IntStream.range(0, HOSTS).boxed()
+                .collect(toMap(i -> "Router " + i, i -> 10_000 + i))), hostIds);
+        // IDs first, then names by pages of batch size
+        assertEquals(4, requests.size());
+        assertTrue(requests.stream().skip(1).allMatch(request -> request.path("params").path("hostids").size() <= 2));
+    }
+
+    @Test
+    void failedPageIsNotTakenAsNoHosts() {
+        answer = request -> request.path("params").has("hostids") ? null : hosts(request);
+
+        assertEquals(Optional.empty(), service.getAllHostIds());
+    }
+
+    @Test
+    void exportIsChunkedByHostsOfOneGroup() throws Exception {
+        // Host 10002 is in both groups
+        answer = request -> switch (request.path("method").asText()) {
+            case "hostgroup.get" -> """
+                    [{"groupid":"1","hosts":[{"hostid":"10000"},{"hostid":"10001"},{"hostid":"10002"}]},\
+                    {"groupid":"2","hosts":[{"hostid":"10002"},{"hostid":"10003"},{"hostid":"10004"}]}]""";
+            case "configuration.export" -> "\"<zabbix_export/>\"";
+            default -> null;
+        };
+
+        final Map<String, Path> files = service.exportHosts(List.of("Shops"));
+        files.values().forEach(file -> file.toFile().delete());
+
+        assertEquals(List.of("export-host-1.xml.gz", "export-host-2.xml.gz", "export-host-3.xml.gz"),
+                List.copyOf(files.keySet()));
+        final List<String> exported = requests.stream()
+                .filter(request -> "configuration.export".equals(request.path("method").asText()))
+                .flatMap(request -> stream(request.path("params").path("options").path("hosts").spliterator(), false))
+                .map(JsonNode::asText)
+                .toList();
+        assertEquals(List.of("10000", "10001", "10002", "10003", "10004"), exported);
+    }
+
+    /**
+     * host.get: all hosts or hosts of requested IDs
+     */
+    private String hosts(JsonNode request) {
+        final JsonNode ids = request.path("params").path("hostids");
+        final StringJoiner result = new StringJoiner(",", "[", "]");
+        for (int i = 0; i < HOSTS; i++) {
+            final String hostId = String.valueOf(10_000 + i);
+            if (!ids.isMissingNode() && !ids.toString().contains('"' + hostId + '"')) continue;
+            result.add("""
+                    {"hostid":"%s","name":"Router %s"}""".formatted(hostId, i));
+        }
+        return result.toString();
+    }
+
+}
@@ -0,0 +1,68 @@
+package ru.krsmon.bridge.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class PortScannerTest {
+    private final PortScanner scanner = new PortScanner("port-scanner-test");
+
+    @AfterEach
+    void tearDown() {
+        scanner.stop();
+    }
+
+    @Test
+    void openPortIsFound() throws Exception {
+        try (ServerSocket server = new ServerSocket()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            final int port = server.getLocalPort();
+
+            assertEquals(Set.of(port), scanner.newSession(2_000).scan("127.0.0.1", Set.of(port)).get(5, SECONDS));
+        }
+    }
+
+    @Test
+    void stopCompletesProbesInProgress() throws Exception {
+        final List<Socket> clients = new ArrayList<>();
+        try (ServerSocket server = new ServerSocket()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1);
+            // Accept queue is full, next connect waits for server till timeout
+            for (int i = 0; i < 8; i++) {
+                final Socket client = new Socket();
+                clients.add(client);
+                try {
+                    client.connect(server.getLocalSocketAddress(), 100);
+                } catch (IOException ignored) {
+                }
+            }
+            final CompletableFuture<Boolean> probe = scanner.probe("127.0.0.1", server.getLocalPort(), 60_000);
+            Thread.sleep(200);
+            assertFalse(probe.isDone());
+            scanner.stop();
+
+            assertFalse(probe.get(5, SECONDS));
+            assertFalse(scanner.probe("127.0.0.1", server.getLocalPort(), 60_000).get(5, SECONDS));
+        } finally {
+            for (Socket client : clients) client.close();
+        }
+    }
+
+    @Test
+    void unresolvedHostIsClosed() throws Exception {
+        assertFalse(scanner.probe("unknown.invalid", 80, 1_000).get(5, SECONDS));
+    }
+
+}
@@ -0,0 +1,83 @@
+package ru.krsmon.bridge.service.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.krsmon.bridge.model.Brand;
+import ru.krsmon.bridge.model.Device;
+import ru.krsmon.bridge.model.DeviceStateChangedEvent;
+import ru.krsmon.bridge.model.DeviceStatus;
+import ru.krsmon.bridge.model.DeviceType;
+import ru.krsmon.bridge.model.Protocol;
+import ru.krsmon.bridge.model.SurveyCompletedEvent;
+import ru.krsmon.bridge.model.SurveyRequest;
+import ru.krsmon.bridge.model.SurveyResponse;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeviceStateStoreTest {
+    private final List<DeviceStateChangedEvent> events = new CopyOnWriteArrayList<>();
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void fullJournalIsCompactedInBackgroundAndReplayed() throws Exception {
+        final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        final DeviceStateStore store = store(registry);
+        // Every survey flaps device, 1 MB journal is full after about 20000 changes
+        final int surveys = 40_000;
+        for (int i = 0; i < surveys; i++) store.onSurveyCompleted(event(i % 2 == 0 ? 1 : 2));
+
+        final long deadline = System.currentTimeMillis() + 5_000;
+        while (registry.get("state.journal.bytes").gauge().value() > 1024 * 1024 / 2) {
+            assertTrue(System.currentTimeMillis() < deadline, "Full journal is not compacted.");
+            Thread.sleep(20);
+        }
+        assertEquals(surveys, events.size());
+        store.stop();
+
+        // Last state is replayed, same status after restart is not a change
+        events.clear();
+        final DeviceStateStore restarted = store(new SimpleMeterRegistry());
+        restarted.onSurveyCompleted(event(2));
+        restarted.stop();
+        assertEquals(List.of(), events);
+    }
+
+    private DeviceStateStore store(SimpleMeterRegistry registry) {
+        final DeviceStateStore store = new DeviceStateStore(event -> events.add((DeviceStateChangedEvent) event), registry);
+        ReflectionTestUtils.setField(store, "file", dir.resolve("state.db").toString());
+        ReflectionTestUtils.setField(store, "capacity", 1);
+        ReflectionTestUtils.setField(store, "compactInterval", 3600);
+        ReflectionTestUtils.setField(store, "retention", 3600);
+        store.start();
+        return store;
+    }
+
+    private static SurveyCompletedEvent event(int code) {
+        final Device device = new Device();
+        device.setMac("AA:AA:AA:AA:AA:01");
+        device.setType(DeviceType.KEEPER);
+        device.setIp("10.0.0.2");
+        device.setKey("KEEPER1");
+        final SurveyRequest request = new SurveyRequest();
+        request.setIp("10.0.0.1");
+        request.setService(22);
+        request.setHttp(80);
+        request.setDevices(new HashSet<>(Set.of(device)));
+        final SurveyResponse response = SurveyResponse.builder()
+                .result(Map.of("KEEPER1", new DeviceStatus(code, "ok"), "ROUTER", new DeviceStatus(1, "ok")))
+                .build();
+        return new SurveyCompletedEvent(Brand.ASUS, Protocol.SSH, request, response);
+    }
+
+}
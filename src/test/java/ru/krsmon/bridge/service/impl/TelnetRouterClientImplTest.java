@@ -0,0 +1,154 @@
+package ru.krsmon.bridge.service.impl;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.krsmon.bridge.external.zabbix.MacroUpdateQueue;
+import ru.krsmon.bridge.external.zabbix.service.ZabbixService;
+import ru.krsmon.bridge.model.Brand;
+import ru.krsmon.bridge.model.Device;
+import ru.krsmon.bridge.model.DeviceType;
+import ru.krsmon.bridge.model.SurveyRequest;
+import ru.krsmon.bridge.model.SurveyResponse;
+import ru.krsmon.bridge.service.cache.ArpCache;
+import ru.krsmon.bridge.service.cache.HostIdCache;
+import ru.krsmon.bridge.service.cache.LatencyModel;
+import ru.krsmon.bridge.service.metrics.SurveyMetrics;
+import ru.krsmon.bridge.service.pool.TelnetSessionPool;
+import ru.krsmon.bridge.service.pool.TelnetStub;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static ru.krsmon.bridge.model.DeviceStatus.Status.OFFLINE;
+
+class TelnetRouterClientImplTest {
+    private static final String ONLINE_BATCH = """
+            @@PING 10.0.0.2\r
+            1 packets transmitted, 1 received, 0% packet loss\r
+            @@END\r
+            @@PING 10.0.0.3\r
+            1 packets transmitted, 1 received, 0% packet loss\r
+            @@END\r
+            @@DONE\r
+            """;
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private TelnetStub router;
+    private TelnetSessionPool pool;
+    private TelnetRouterClientImpl client;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        router = new TelnetStub();
+        final SurveyMetrics metrics = new SurveyMetrics(registry);
+        final LatencyModel latency = latencyModel();
+        pool = new TelnetSessionPool(metrics, latency, registry);
+        ReflectionTestUtils.setField(pool, "timeout", 5);
+        ReflectionTestUtils.setField(pool, "idleTimeout", 120);
+        ReflectionTestUtils.setField(pool, "maxLifetime", 900);
+        ReflectionTestUtils.setField(pool, "resyncTimeout", 3);
+        ReflectionTestUtils.setField(pool, "captureSize", 4096);
+        pool.start();
+
+        // ARP is taken from cache, session runs pings only
+        final ArpCache arpCache = mock(ArpCache.class);
+        when(arpCache.get(any())).thenAnswer(ignored -> Optional.of(new HashMap<>(Map.of(
+                "AA:AA:AA:AA:AA:02", "10.0.0.2", "AA:AA:AA:AA:AA:03", "10.0.0.3"))));
+        client = new TelnetRouterClientImpl(mock(ZabbixService.class), mock(MacroUpdateQueue.class), arpCache,
+                mock(HostIdCache.class), metrics, latency, pool);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        pool.stop();
+        router.close();
+    }
+
+    @Test
+    void lateBatchOutputIsNotTakenAsPingOfDevice() {
+        // Batch answers after command timeout, single pings of devices fail
+        router.answer(command -> {
+            if (!command.startsWith("for ip in")) return "1 packets transmitted, 0 received, 100% packet loss\r\n";
+            sleep(1_500);
+            return ONLINE_BATCH;
+        });
+
+        final SurveyResponse response = client.executeFullSurvey(request(), Brand.ASUS);
+
+        assertEquals(OFFLINE.getCode(), response.getResult().get("KEEPER2").code());
+        assertEquals(OFFLINE.getCode(), response.getResult().get("KEEPER3").code());
+        assertEquals(4, router.commands().stream().filter(command -> command.startsWith("ping ")).count());
+    }
+
+    @Test
+    void sessionIsGivenUpWhenBatchDoesNotFinish() {
+        router.answer(command -> {
+            if (!command.startsWith("for ip in")) return "1 packets transmitted, 1 received, 0% packet loss\r\n";
+            sleep(5_000);
+            return ONLINE_BATCH;
+        });
+
+        final SurveyResponse response = client.executeFullSurvey(request(), Brand.ASUS);
+
+        assertTrue(response.getMessage().contains("Connection fail."));
+        assertFalse(router.commands().stream().anyMatch(command -> command.startsWith("ping ")));
+        // Broken session is not returned into pool, next survey logs in again
+        router.answer(command -> "1 packets transmitted, 1 received, 0% packet loss\r\n");
+        client.executeFullSurvey(request(), Brand.ASUS);
+        assertEquals(0, pool.getHits().get());
+        assertEquals(2, router.logins());
+    }
+
+    private SurveyRequest request() {
+        final SurveyRequest request = new SurveyRequest();
+        request.setZabbixId(5);
+        request.setName("Router 1");
+        request.setIp("127.0.0.1");
+        request.setService(router.port());
+        request.setLogin("admin");
+        request.setPassword("secret");
+        request.setDevices(new HashSet<>(Set.of(device(2), device(3))));
+        return request;
+    }
+
+    private static Device device(int number) {
+        final Device device = new Device();
+        device.setMac("AA:AA:AA:AA:AA:0" + number);
+        device.setType(DeviceType.KEEPER);
+        device.setIp("10.0.0." + number);
+        device.setKey("KEEPER" + number);
+        return device;
+    }
+
+    private static LatencyModel latencyModel() {
+        final LatencyModel latency = new LatencyModel();
+        ReflectionTestUtils.setField(latency, "maxRouters", 100);
+        ReflectionTestUtils.setField(latency, "deviationFactor", 4);
+        for (String kind : List.of("connect", "auth", "command", "probe")) {
+            ReflectionTestUtils.setField(latency, kind + "Floor", 1_000L);
+            ReflectionTestUtils.setField(latency, kind + "Ceiling", 1_000L);
+        }
+        latency.init();
+        return latency;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
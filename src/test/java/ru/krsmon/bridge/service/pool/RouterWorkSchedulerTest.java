@@ -0,0 +1,70 @@
+package ru.krsmon.bridge.service.pool;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.krsmon.bridge.service.pool.RouterWorkScheduler.Lane;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class RouterWorkSchedulerTest {
+    private final Queue<Runnable> executing = new ArrayDeque<>();
+    private final List<String> done = new ArrayList<>();
+    private RouterWorkScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        // Work is started by test one by one, so order of starts is known
+        final ExecutorService executor = mock(ExecutorService.class);
+        doAnswer(invocation -> executing.add(invocation.getArgument(0))).when(executor).execute(any());
+        scheduler = new RouterWorkScheduler(executor, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(scheduler, "maxConcurrent", 10);
+        ReflectionTestUtils.setField(scheduler, "maxPerRouter", 1);
+        ReflectionTestUtils.setField(scheduler, "maxPerBrand", "");
+        ReflectionTestUtils.setField(scheduler, "backgroundShare", 4);
+        scheduler.init();
+    }
+
+    @Test
+    void backgroundGetsEveryFourthStart() {
+        submit(Lane.INTERACTIVE, "I1");
+        // Router is at its cap, these submits start nothing and must not shift the background turn
+        submit(Lane.INTERACTIVE, "I2");
+        submit(Lane.INTERACTIVE, "I3");
+        submit(Lane.INTERACTIVE, "I4");
+        submit(Lane.BACKGROUND, "B1");
+        submit(Lane.BACKGROUND, "B2");
+        runAll();
+
+        assertEquals(List.of("I1", "I2", "I3", "B1", "I4", "B2"), done);
+    }
+
+    @Test
+    void routerCapKeepsOtherRoutersRunning() {
+        scheduler.submit(Lane.INTERACTIVE, "10.0.0.1:22", null, () -> done.add("A1"));
+        scheduler.submit(Lane.INTERACTIVE, "10.0.0.1:22", null, () -> done.add("A2"));
+        scheduler.submit(Lane.INTERACTIVE, "10.0.0.2:22", null, () -> done.add("B1"));
+
+        assertEquals(2, executing.size());
+        runAll();
+        assertEquals(List.of("A1", "B1", "A2"), done);
+    }
+
+    private void submit(Lane lane, String name) {
+        scheduler.submit(lane, "10.0.0.1:22", null, () -> done.add(name));
+    }
+
+    private void runAll() {
+        while (!executing.isEmpty()) executing.poll().run();
+    }
+
+}
@@ -0,0 +1,112 @@
+package ru.krsmon.bridge.service.pool;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import net.sf.expectit.Expect;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.krsmon.bridge.model.Brand;
+import ru.krsmon.bridge.model.SurveyRequest;
+import ru.krsmon.bridge.service.cache.LatencyModel;
+import ru.krsmon.bridge.service.metrics.SurveyMetrics;
+import java.io.IOException;
+import java.util.List;
+
+import static java.lang.System.currentTimeMillis;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static net.sf.expectit.matcher.Matchers.contains;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TelnetSessionPoolTest {
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private TelnetStub router;
+    private TelnetSessionPool pool;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        router = new TelnetStub();
+        router.answer(command -> "output of " + command + "\r\n");
+        pool = new TelnetSessionPool(new SurveyMetrics(registry), latencyModel(), registry);
+        ReflectionTestUtils.setField(pool, "timeout", 5);
+        ReflectionTestUtils.setField(pool, "idleTimeout", 120);
+        ReflectionTestUtils.setField(pool, "maxLifetime", 900);
+        ReflectionTestUtils.setField(pool, "resyncTimeout", 3);
+        ReflectionTestUtils.setField(pool, "captureSize", 4096);
+        pool.start();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        pool.stop();
+        router.close();
+    }
+
+    @Test
+    void idleSessionIsReusedWithoutWaiting() throws Exception {
+        try (var lease = pool.borrow(request("secret"), Brand.ASUS, TelnetSessionPoolTest::login, false)) {
+            assertEquals("output of arp", command(lease, "arp"));
+        }
+
+        final long startedAt = currentTimeMillis();
+        try (var lease = pool.borrow(request("secret"), Brand.ASUS, TelnetSessionPoolTest::login, false)) {
+            assertTrue(lease.isReused());
+            assertTrue(currentTimeMillis() - startedAt < 1_000, "Re-sync of pooled session waits for timeout.");
+            assertEquals("output of ping", command(lease, "ping"));
+        }
+        assertEquals(1, router.logins());
+        assertEquals(List.of("arp", "", "ping"), router.commands());
+        assertEquals(1, pool.getHits().get());
+    }
+
+    @Test
+    void sessionOfOtherPasswordIsNotReused() throws Exception {
+        try (var ignored = pool.borrow(request("secret"), Brand.ASUS, TelnetSessionPoolTest::login, false)) {
+        }
+        try (var lease = pool.borrow(request("changed"), Brand.ASUS, TelnetSessionPoolTest::login, false)) {
+            assertFalse(lease.isReused());
+        }
+        assertEquals(2, router.logins());
+    }
+
+    private SurveyRequest request(String password) {
+        final SurveyRequest request = new SurveyRequest();
+        request.setIp("127.0.0.1");
+        request.setService(router.port());
+        request.setLogin("admin");
+        request.setPassword(password);
+        return request;
+    }
+
+    private static String command(TelnetSessionPool.Lease lease, String command) throws IOException {
+        final CommandCapture capture = lease.capture();
+        capture.begin(Brand.ASUS.getInvite());
+        lease.expect().sendLine(command);
+        lease.expect().withTimeout(3, SECONDS).expect(capture.completed());
+        final String output = capture.end();
+        return output.substring(output.indexOf('\n') + 1, output.lastIndexOf(TelnetStub.INVITE)).strip();
+    }
+
+    private static void login(Expect expect, SurveyRequest request, Brand brand) throws IOException {
+        expect.withTimeout(3, SECONDS).expect(contains("ogin"));
+        expect.sendLine(request.getLogin());
+        expect.withTimeout(3, SECONDS).expect(contains("assword"));
+        expect.sendLine(request.getPassword());
+        expect.withTimeout(3, SECONDS).expect(contains(brand.getInvite()));
+    }
+
+    private static LatencyModel latencyModel() {
+        final LatencyModel latency = new LatencyModel();
+        ReflectionTestUtils.setField(latency, "maxRouters", 100);
+        ReflectionTestUtils.setField(latency, "deviationFactor", 4);
+        for (String kind : List.of("connect", "auth", "command", "probe")) {
+            ReflectionTestUtils.setField(latency, kind + "Floor", 1_000L);
+            ReflectionTestUtils.setField(latency, kind + "Ceiling", 5_000L);
+        }
+        latency.init();
+        return latency;
+    }
+
+}
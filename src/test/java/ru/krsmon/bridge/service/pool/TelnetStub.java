@@ -0,0 +1,119 @@
+package ru.krsmon.bridge.service.pool;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Local stand-in of router telnet line: login dialog, then every command is answered by handler and invite
+ */
+public class TelnetStub implements AutoCloseable {
+    public static final String INVITE = "router #";
+    private final AtomicInteger logins = new AtomicInteger();
+    private final List<String> commands = new CopyOnWriteArrayList<>();
+    private final List<Socket> clients = new CopyOnWriteArrayList<>();
+    private final ServerSocket server;
+    private volatile Function<String, String> handler = command -> "";
+
+    public TelnetStub() throws IOException {
+        server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        final Thread acceptor = new Thread(this::accept, "telnet-stub");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int port() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Output of command, without invite. Handler may block to emulate slow command
+     */
+    public void answer(Function<String, String> handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Lines received after login, empty line is re-sync of pooled session
+     */
+    public List<String> commands() {
+        return commands;
+    }
+
+    /**
+     * @return completed login dialogs
+     */
+    public int logins() {
+        return logins.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        server.close();
+        for (Socket client : clients) client.close();
+    }
+
+    private void accept() {
+        while (!server.isClosed()) {
+            try {
+                final Socket client = server.accept();
+                clients.add(client);
+                final Thread session = new Thread(() -> serve(client), "telnet-stub-session");
+                session.setDaemon(true);
+                session.start();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void serve(Socket client) {
+        try (client) {
+            final InputStream in = client.getInputStream();
+            final OutputStream out = client.getOutputStream();
+            write(out, "Login: ");
+            if (readLine(in) == null) return;
+            write(out, "Password: ");
+            if (readLine(in) == null) return;
+            logins.incrementAndGet();
+            write(out, "\r\n" + INVITE + " ");
+
+            String line;
+            while ((line = readLine(in)) != null) {
+                commands.add(line);
+                // Echo of command, like router does
+                final String output = line.isEmpty() ? "" : handler.apply(line);
+                write(out, line + "\r\n" + output + INVITE + " ");
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static void write(OutputStream out, String text) throws IOException {
+        synchronized (out) {
+            out.write(text.getBytes(UTF_8));
+            out.flush();
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int next;
+        while ((next = in.read()) != -1) {
+            if (next == '\n') return line.toString(UTF_8);
+            // Skip CR and telnet negotiation bytes
+            if (next != '\r' && next < 0x80) line.write(next);
+        }
+        return null;
+    }
+
+}
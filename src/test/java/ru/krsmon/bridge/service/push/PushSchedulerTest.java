@@ -0,0 +1,111 @@
+package ru.krsmon.bridge.service.push;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import ru.krsmon.bridge.external.zabbix.TrapperStub;
+import ru.krsmon.bridge.external.zabbix.ZabbixSender;
+import ru.krsmon.bridge.model.DeviceStatus;
+import ru.krsmon.bridge.model.SurveyResponse;
+import ru.krsmon.bridge.service.SurveyService;
+import ru.krsmon.bridge.service.pool.RouterWorkScheduler.Lane;
+import ru.krsmon.bridge.service.push.PushRegistry.Target;
+import java.util.Map;
+import java.util.Optional;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PushSchedulerTest {
+    private static final String ROUTER = """
+            {"brand":"ASUS","protocol":"SSH","ip":"10.0.0.1","name":"Router 1","login":"admin","password":"admin",\
+            "http":80,"service":22,"devices":[]}""";
+    private final ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build();
+    private final SurveyService surveyService = mock(SurveyService.class);
+    private final PushRegistry pushRegistry = mock(PushRegistry.class);
+    private final AtomicInteger surveys = new AtomicInteger();
+    private TrapperStub trapper;
+    private PushScheduler scheduler;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        trapper = new TrapperStub();
+        final ZabbixSender sender = new ZabbixSender(mapper);
+        ReflectionTestUtils.setField(sender, "host", "127.0.0.1");
+        ReflectionTestUtils.setField(sender, "port", trapper.port());
+        ReflectionTestUtils.setField(sender, "timeout", 30);
+        ReflectionTestUtils.setField(sender, "batchSize", 1000);
+
+        when(pushRegistry.load()).thenReturn(Optional.of(Map.of("router-1", new Target("router-1", mapper.readTree(ROUTER)))));
+        // Router is ONLINE for two surveys, then OFFLINE, like answers of result cache between real surveys
+        when(surveyService.survey(any(), any(), any(), eq(Lane.BACKGROUND))).thenAnswer(ignored -> {
+            final int code = surveys.incrementAndGet() <= 2 ? 1 : 2;
+            return CompletableFuture.completedFuture(SurveyResponse.builder()
+                    .code(code == 1 ? 200 : 503)
+                    .message(code == 1 ? "Success" : "HOST OFFLINE")
+                    .result(Map.of("ROUTER", new DeviceStatus(code, "ok")))
+                    .build());
+        });
+
+        scheduler = new PushScheduler(pushRegistry, surveyService, sender, mapper, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(scheduler, "interval", 1);
+        ReflectionTestUtils.setField(scheduler, "refreshInterval", 3600);
+        ReflectionTestUtils.setField(scheduler, "maxConcurrent", 4);
+        ReflectionTestUtils.setField(scheduler, "flushInterval", 3600);
+        ReflectionTestUtils.setField(scheduler, "changesOnly", false);
+        ReflectionTestUtils.setField(scheduler, "batchSize", 1);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        trapper.release();
+        scheduler.stop();
+        trapper.close();
+    }
+
+    @Test
+    void slowTrapperNeverStopsSurveyTimers() throws Exception {
+        trapper.hold();
+        scheduler.start();
+
+        // Every survey fills the batch, flush of the first one waits for trapper till release
+        verify(surveyService, timeout(6_000).atLeast(5)).survey(any(), any(), any(), eq(Lane.BACKGROUND));
+        assertEquals(1, trapper.batches().size());
+
+        trapper.release();
+        final long deadline = System.currentTimeMillis() + 5_000;
+        while (trapper.values().stream().noneMatch(value -> "bridge.device.status[ROUTER]".equals(value.path("key").asText()))) {
+            assertTrue(System.currentTimeMillis() < deadline, "Values are not sent after trapper is back.");
+            Thread.sleep(50);
+        }
+    }
+
+    @Test
+    void changesOnlySendsStatusesDifferentFromPushed() throws Exception {
+        ReflectionTestUtils.setField(scheduler, "changesOnly", true);
+        scheduler.start();
+
+        verify(surveyService, timeout(6_000).atLeast(4)).survey(any(), any(), any(), eq(Lane.BACKGROUND));
+        scheduler.stop();
+
+        assertEquals(List.of("1", "2"), trapper.values().stream()
+                .filter(value -> "bridge.device.status[ROUTER]".equals(value.path("key").asText()))
+                .map(value -> value.path("value").asText())
+                .toList());
+    }
+
+}
@@ -0,0 +1,117 @@
+package ru.krsmon.bridge.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.params.provider.Arguments.arguments;
+
+class RegexUtilsTest {
+
+    static Stream<Arguments> arpOutputs() {
+        return Stream.of(
+                arguments("KEENETIC", """
+                        show ip arp
+
+                                  ip                mac           interface
+                          ============== ================= ============
+                          192.168.1.10   b8:27:eb:12:34:56   Home
+                          192.168.1.11   00:1a:2b:3c:4d:5e   Home
+                          10.10.0.2      B8:27:EB:12:34:56   Guest
+                        (config)>"""),
+                arguments("MIKROTIK", """
+                        Flags: X - disabled, I - invalid, H - DHCP, D - dynamic, P - published, C - complete
+                         #    ADDRESS         MAC-ADDRESS       INTERFACE
+                         0 DC 192.168.88.10   B8:27:EB:12:34:56 bridge
+                         1 DC 192.168.88.11   00:1A:2B:3C:4D:5E bridge
+                         2  I 192.168.88.12                     bridge
+                        """),
+                arguments("PROC_NET_ARP", """
+                        IP address       HW type     Flags       HW address            Mask     Device
+                        192.168.1.10     0x1         0x2         b8:27:eb:12:34:56     *        br0
+                        192.168.1.11     0x1         0x0         00:00:00:00:00:00     *        br0
+                        192.168.1.12     0x1         0x2         00:1a:2b:3c:4d:5e     *        br0
+                        """),
+                arguments("CRLF", "192.168.1.10 b8:27:eb:12:34:56\r\n192.168.1.11 00:1a:2b:3c:4d:5e\r\n"),
+                arguments("MAC_BEFORE_IP", "b8:27:eb:12:34:56 at 192.168.1.10 on br0\n"),
+                arguments("LONG_GROUPS", """
+                        1234.168.1.10 b8:27:eb:12:34:56:78
+                        192.168.1.1000 00:1a:2b:3c:4d:5e
+                        firmware 1.2.3.4.5 aa:bb:cc:dd:ee:ff
+                        """),
+                arguments("NO_PAIRS", "192.168.1.10 incomplete\nb8:27:eb:12:34:56 no ip\n"),
+                arguments("EMPTY", ""));
+    }
+
+    static Stream<Arguments> pingOutputs() {
+        return Stream.of(
+                arguments("KEENETIC", """
+                        Sending ICMP ECHO request to 192.168.1.10
+
+                        40 bytes from 192.168.1.10: seq=0, ttl=64, time=0.455 ms.
+
+                        --- 192.168.1.10 ping statistics ---
+                        1 packets transmitted, 1 packets received, 0% packet loss,
+                        0 duplicate(s), time 0.455/0.455/0.455 ms.
+                        (config)>"""),
+                arguments("BUSYBOX_LOST", """
+                        PING 192.168.1.10 (192.168.1.10): 56 data bytes
+
+                        --- 192.168.1.10 ping statistics ---
+                        1 packets transmitted, 0 packets received, 100% packet loss
+                        """),
+                arguments("IPUTILS", """
+                        PING 192.168.1.10 (192.168.1.10) 56(84) bytes of data.
+                        64 bytes from 192.168.1.10: icmp_seq=1 ttl=64 time=0.045 ms
+
+                        --- 192.168.1.10 ping statistics ---
+                        3 packets transmitted, 2 received, 33% packet loss, time 2003ms
+                        rtt min/avg/max/mdev = 0.045/0.045/0.045/0.000 ms
+                        """),
+                arguments("MIKROTIK", """
+                          SEQ HOST                                     SIZE TTL TIME  STATUS
+                            0 192.168.88.10                              56  64 0ms
+                            sent=1 received=1 packet-loss=0% min-rtt=0ms avg-rtt=0ms max-rtt=0ms
+                        """),
+                arguments("MIKROTIK_BATCH", "packet loss=100%\n"),
+                arguments("LONG_NUMBER", "loss 1234%\n"),
+                arguments("UNRECOGNIZED", "ping: bad address '192.168.1.300'\n"),
+                arguments("EMPTY", ""));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("arpOutputs")
+    void arpScannerMatchesRegex(String brand, String output) {
+        assertEquals(RegexReference.getArpMapRegex(output), RegexUtils.getArpMap(output));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("pingOutputs")
+    void pingScannerMatchesRegex(String brand, String output) {
+        assertEquals(RegexReference.toPingResultRegex(output), RegexUtils.toPingResult(output));
+    }
+
+    @Test
+    void batchPingIsSplitByIp() {
+        final String output = """
+                for ip in 192.168.1.10 192.168.1.11; do (r=$(ping $ip -c 1 2>&1); printf '@@PING %s\\n%s\\n@@END\\n' ...
+                @@PING 192.168.1.11
+                1 packets transmitted, 0 packets received, 100% packet loss
+                @@END
+                @@PING 192.168.1.10
+                1 packets transmitted, 1 packets received, 0% packet loss
+                @@END
+                @@DONE
+                """;
+
+        assertEquals(Map.of(
+                "192.168.1.10", Map.entry(true, "packet loss 0%"),
+                "192.168.1.11", Map.entry(false, "packet loss 100%")
+        ), RegexUtils.toPingResults(output));
+    }
+
+}